@@ -48,6 +48,8 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.RegionUtils;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.AccessControlList;
 import com.amazonaws.services.s3.model.Bucket;
 import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
@@ -55,28 +57,49 @@ import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.CopyObjectResult;
 import com.amazonaws.services.s3.model.CopyPartRequest;
 import com.amazonaws.services.s3.model.CopyPartResult;
-import com.amazonaws.services.s3.model.GetObjectMetadataRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.Owner;
 import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.upplication.s3fs.util.S3DownloadOptions;
 import com.upplication.s3fs.util.S3MultipartOptions;
+import com.upplication.s3fs.util.S3UploadRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Client Amazon S3
@@ -103,12 +126,24 @@ public class AmazonS3Client {
 	public ObjectListing listObjects(ListObjectsRequest request) {
 		return client.listObjects(request);
 	}
+	/**
+	 * @see com.amazonaws.services.s3.AmazonS3Client#listObjectsV2(ListObjectsV2Request)
+	 */
+	public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+		return client.listObjectsV2(request);
+	}
 	/**
 	 * @see com.amazonaws.services.s3.AmazonS3Client#getObject(String, String)
 	 */
 	public S3Object getObject(String bucketName, String key) {
 		return client.getObject(bucketName, key);
 	}
+	/**
+	 * @see com.amazonaws.services.s3.AmazonS3Client#getObject(GetObjectRequest)
+	 */
+	public S3Object getObject(GetObjectRequest request) {
+		return client.getObject(request);
+	}
 	/**
 	 * @see com.amazonaws.services.s3.AmazonS3Client#putObject(String, String, File)
 	 */
@@ -128,6 +163,12 @@ public class AmazonS3Client {
 	public void deleteObject(String bucket, String key) {
 		client.deleteObject(bucket, key);
 	}
+	/**
+	 * @see com.amazonaws.services.s3.AmazonS3Client#deleteObjects(DeleteObjectsRequest)
+	 */
+	public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+		return client.deleteObjects(request);
+	}
 	/**
 	 * @see com.amazonaws.services.s3.AmazonS3Client#copyObject(String, String, String, String)
 	 */
@@ -181,6 +222,147 @@ public class AmazonS3Client {
 		return client.getObjectMetadata(bucketName, key);
 	}
 
+	/**
+	 * Download a range of bytes of the specified object, retrying the request on failure
+	 *
+	 * @param objectId The S3 object to download
+	 * @param start The position of the first byte to download (inclusive)
+	 * @param end The position of the last byte to download (inclusive)
+	 * @param etag When not {@code null} the object ETag expected, the download fails if the object has been modified
+	 * @param opts The download options
+	 * @return The downloaded bytes
+	 * @throws IOException
+	 */
+	public byte[] getObjectRange(S3ObjectId objectId, long start, long end, String etag, S3DownloadOptions opts) throws IOException {
+		final byte[] result = new byte[(int)(end - start + 1)];
+
+		int attempt=0;
+		while( true ) {
+			attempt++;
+			try {
+				log.trace("Downloading range {}-{} attempt {} for {}", start, end, attempt, objectId);
+				getObjectRange0(result, objectId, start, etag);
+				return result;
+			}
+			catch (AmazonClientException | IOException e) {
+				if( attempt >= opts.getMaxAttempts() )
+					throw new IOException("Failed to download data from Amazon S3 object " + objectId, e);
+
+				log.debug("Failed to download range {}-{} attempt {} for {} -- Caused by: {}", start, end, attempt, objectId, e.getMessage());
+				try {
+					Thread.sleep(opts.getRetrySleepWithAttempt(attempt));
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Download interrupted for Amazon S3 object " + objectId);
+				}
+			}
+		}
+	}
+
+	private void getObjectRange0(byte[] buffer, S3ObjectId objectId, long start, String etag) throws IOException {
+		final GetObjectRequest request = new GetObjectRequest(objectId.getBucket(), objectId.getKey()).withRange(start, start + buffer.length - 1);
+		if( etag != null )
+			request.withMatchingETagConstraint(etag);
+
+		final S3Object object = getObject(request);
+		if( object == null )
+			throw new IOException("Amazon S3 object has been modified while downloading it: " + objectId);
+
+		try (InputStream content = object.getObjectContent()) {
+			int offset = 0;
+			while( offset < buffer.length ) {
+				int n = content.read(buffer, offset, buffer.length - offset);
+				if( n == -1 )
+					throw new IOException("Premature end of Amazon S3 object content -- expected: " + buffer.length + "; read: " + offset);
+				offset += n;
+			}
+		}
+	}
+
+	/**
+	 * Download an object to a local file. The file is pre-allocated, then the object chunks
+	 * are fetched in parallel with ranged requests and written at their offset in the file.
+	 * <p>
+	 * All the ranged requests are constrained to the ETag of the object when the download
+	 * started, and the number of bytes written is checked against the object size once completed.
+	 * The file is deleted when the download fails.
+	 *
+	 * @param objectId The S3 object to download
+	 * @param file The local target file, replaced if it already exists
+	 * @param opts The download options
+	 * @throws IOException When the download fails
+	 */
+	public void downloadFile(final S3ObjectId objectId, Path file, final S3DownloadOptions opts) throws IOException {
+
+		final ObjectMetadata meta = getObjectMetadata(objectId.getBucket(), objectId.getKey());
+		final long length = meta.getContentLength();
+		final String etag = meta.getETag();
+		final int chunkSize = opts.getChunkSize();
+
+		log.trace("Starting download from: {} to {} -- size={}; chunkSize={}", objectId, file, length, chunkSize);
+		boolean success = false;
+		try( final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+			// pre-allocate the file, so that the chunks can be written in any order
+			if( length > 0 )
+				channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+
+			final AtomicLong written = new AtomicLong();
+			final ExecutorService executor = S3ParallelInputStream.getOrCreateExecutor(opts.getMaxThreads());
+			final int maxInFlight = opts.getPrefetchCount();
+			final Deque<Future<Void>> pending = new ArrayDeque<>();
+			try {
+				for( long position = 0; position < length; position += chunkSize ) {
+					if( pending.size() >= maxInFlight )
+						awaitChunk(pending.poll(), objectId);
+					final long start = position;
+					final long end = Math.min(position + chunkSize, length) - 1;
+					pending.add(executor.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws IOException {
+							final ByteBuffer buffer = ByteBuffer.wrap(getObjectRange(objectId, start, end, etag, opts));
+							while( buffer.hasRemaining() )
+								written.addAndGet(channel.write(buffer, start + buffer.position()));
+							return null;
+						}
+					}));
+				}
+				while( !pending.isEmpty() )
+					awaitChunk(pending.poll(), objectId);
+			}
+			finally {
+				for( Future<Void> it : pending )
+					it.cancel(true);
+			}
+
+			// the file size always matches since it is pre-allocated, thus check the bytes actually written
+			if( written.get() != length )
+				throw new IOException(String.format("Size of downloaded file %s does not match Amazon S3 object %s -- expected: %d; actual: %d", file, objectId, length, written.get()));
+			success = true;
+		}
+		finally {
+			if( !success )
+				Files.deleteIfExists(file);
+		}
+		log.trace("Completed download from: {} to {}", objectId, file);
+	}
+
+	private static void awaitChunk(Future<Void> future, S3ObjectId objectId) throws IOException {
+		try {
+			future.get();
+		}
+		catch( ExecutionException e ) {
+			final Throwable cause = e.getCause();
+			if( cause instanceof IOException )
+				throw (IOException) cause;
+			throw new IOException("Failed to download data from Amazon S3 object " + objectId, cause);
+		}
+		catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Download interrupted for Amazon S3 object " + objectId);
+		}
+	}
+
     /**
      * @see com.amazonaws.services.s3.AmazonS3Client#listNextBatchOfObjects(com.amazonaws.services.s3.model.ObjectListing)
      */
@@ -188,30 +370,39 @@ public class AmazonS3Client {
         return client.listNextBatchOfObjects(objectListing);
     }
 
-	public void multipartCopyObject(S3Path s3Source, S3Path s3Target, Long objectSize, S3MultipartOptions opts ) {
+	/**
+	 * Copy an object with a multipart copy, the parts are copied in parallel.
+	 * <p>
+	 * The target object is created with the content headers, the user metadata and the
+	 * server side encryption of the source object, as a single-part copy does, so that
+	 * a further copy to rewrite the metadata is not required.
+	 *
+	 * @param s3Source The source object path
+	 * @param s3Target The target object path
+	 * @param sourceMetadata The source object metadata
+	 * @param storageClass The target object storage class, {@code null} to keep the one of the source object
+	 * @param opts The multipart options
+	 */
+	public void multipartCopyObject(S3Path s3Source, S3Path s3Target, ObjectMetadata sourceMetadata, StorageClass storageClass, S3MultipartOptions opts ) {
 
 		final String sourceBucketName = s3Source.getBucket();
 		final String sourceObjectKey = s3Source.getKey();
 		final String targetBucketName = s3Target.getBucket();
 		final String targetObjectKey = s3Target.getKey();
-
+		final long objectSize = sourceMetadata.getContentLength();
 
 		// Step 2: Initialize
 		InitiateMultipartUploadRequest initiateRequest =
-				new InitiateMultipartUploadRequest(targetBucketName, targetObjectKey);
+				new InitiateMultipartUploadRequest(targetBucketName, targetObjectKey, copyMetadata(sourceMetadata));
+		final String targetStorageClass = storageClass != null ? storageClass.toString() : sourceMetadata.getStorageClass();
+		if( targetStorageClass != null )
+			initiateRequest.setStorageClass(StorageClass.fromValue(targetStorageClass));
 
 		InitiateMultipartUploadResult initResult = client.initiateMultipartUpload(initiateRequest);
 
 		// Step 3: Save upload Id.
 		String uploadId = initResult.getUploadId();
 
-		// Get object size.
-		if( objectSize == null ) {
-			GetObjectMetadataRequest metadataRequest = new GetObjectMetadataRequest(sourceBucketName, sourceObjectKey);
-			ObjectMetadata metadataResult = client.getObjectMetadata(metadataRequest);
-			objectSize = metadataResult.getContentLength(); // in bytes
-		}
-
 		final int partSize = opts.getChunkSize(objectSize);
 		ExecutorService executor = S3OutputStream.getOrCreateExecutor(opts.getMaxThreads());
 		List<Callable<CopyPartResult>> copyPartRequests = new ArrayList<>();
@@ -266,6 +457,160 @@ public class AmazonS3Client {
 		client.completeMultipartUpload(completeRequest);
 	}
 
+	/**
+	 * Create the metadata of a copied object, i.e. the content headers, the user metadata
+	 * and the server side encryption of the source object. The other source headers
+	 * e.g. the content length or the ETag are response only and must not be sent.
+	 *
+	 * @param source The source object metadata
+	 * @return The metadata to be used for the target object
+	 */
+	static ObjectMetadata copyMetadata(ObjectMetadata source) {
+		final ObjectMetadata result = new ObjectMetadata();
+		result.setUserMetadata(new HashMap<>(source.getUserMetadata()));
+		if( source.getContentType() != null )
+			result.setContentType(source.getContentType());
+		if( source.getContentEncoding() != null )
+			result.setContentEncoding(source.getContentEncoding());
+		if( source.getContentDisposition() != null )
+			result.setContentDisposition(source.getContentDisposition());
+		if( source.getContentLanguage() != null )
+			result.setContentLanguage(source.getContentLanguage());
+		if( source.getCacheControl() != null )
+			result.setCacheControl(source.getCacheControl());
+		if( source.getHttpExpiresDate() != null )
+			result.setHttpExpiresDate(source.getHttpExpiresDate());
+		if( source.getSSEAlgorithm() != null )
+			result.setSSEAlgorithm(source.getSSEAlgorithm());
+		if( source.getSSEAwsKmsKeyId() != null )
+			result.setHeader(Headers.SERVER_SIDE_ENCRYPTION_AWS_KMS_KEYID, source.getSSEAwsKmsKeyId());
+		return result;
+	}
+
+	/**
+	 * Upload a local file. When the file is larger than the upload chunk size a multipart
+	 * upload is used: each part is read by the SDK directly from its offset in the file,
+	 * without copying the data in the heap, and the parts are uploaded in parallel.
+	 *
+	 * @param file The local file to upload
+	 * @param request The upload request defining the target object and the upload options
+	 * @throws IOException When the upload fails
+	 */
+	public void uploadFile(File file, S3UploadRequest request) throws IOException {
+
+		final String bucketName = request.getObjectId().getBucket();
+		final String objectKey = request.getObjectId().getKey();
+		final ObjectMetadata metadata = request.getMetadata() != null ? request.getMetadata().clone() : new ObjectMetadata();
+		final long length = file.length();
+
+		if( length <= request.getChunkSize() ) {
+			metadata.setContentLength(length);
+			PutObjectRequest putRequest = new PutObjectRequest(bucketName, objectKey, file).withMetadata(metadata);
+			if( request.getStorageClass() != null )
+				putRequest.setStorageClass(request.getStorageClass());
+			try {
+				client.putObject(putRequest);
+			}
+			catch( AmazonClientException e ) {
+				throw new IOException("Failed to upload file " + file + " to Amazon S3", e);
+			}
+			return;
+		}
+
+		InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(bucketName, objectKey, metadata);
+		if( request.getStorageClass() != null )
+			initiateRequest.setStorageClass(request.getStorageClass());
+
+		final String uploadId;
+		try {
+			uploadId = client.initiateMultipartUpload(initiateRequest).getUploadId();
+		}
+		catch( AmazonClientException e ) {
+			throw new IOException("Failed to initiate Amazon S3 multipart upload", e);
+		}
+
+		// S3 allows up to 10'000 parts per upload
+		final long partSize = Math.max(request.getChunkSize(), (length + 9_999) / 10_000);
+		List<Callable<PartETag>> uploadPartRequests = new ArrayList<>();
+		long position = 0;
+		for( int i = 1; position < length; i++ ) {
+			final long size = Math.min(partSize, length - position);
+			UploadPartRequest partRequest = new UploadPartRequest()
+					.withBucketName(bucketName)
+					.withKey(objectKey)
+					.withUploadId(uploadId)
+					.withPartNumber(i)
+					.withFile(file)
+					.withFileOffset(position)
+					.withPartSize(size)
+					.withLastPart(position + size == length);
+
+			uploadPartRequests.add( uploadPart(client, partRequest, request) );
+			position += size;
+		}
+
+		log.trace("Starting multipart upload from: {} to s3://{}/{} -- uploadId={}; fileSize={}; partSize={}; numOfParts={}", file, bucketName, objectKey, uploadId, length, partSize, uploadPartRequests.size());
+
+		List<PartETag> etags = new ArrayList<>();
+		try {
+			ExecutorService executor = S3OutputStream.getOrCreateExecutor(request.getMaxThreads());
+			for( Future<PartETag> response : executor.invokeAll(uploadPartRequests) ) {
+				etags.add(response.get());
+			}
+
+			log.trace("Completing multipart upload uploadId={}", uploadId);
+			client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, objectKey, uploadId, etags));
+		}
+		catch( Exception e ) {
+			try {
+				client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, objectKey, uploadId));
+			}
+			catch( AmazonClientException abortError ) {
+				log.warn("Failed to abort multipart upload {}: {}", uploadId, abortError.getMessage());
+			}
+			if( e instanceof InterruptedException ) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while uploading file " + file + " to Amazon S3");
+			}
+			final Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+			throw new IOException("Multipart upload of file " + file + " reported an unexpected error -- uploadId=" + uploadId, cause);
+		}
+	}
+
+	static Callable<PartETag> uploadPart( final AmazonS3 client, final UploadPartRequest request, final S3MultipartOptions<?> opts ) {
+		return new Callable<PartETag>() {
+			@Override
+			public PartETag call() throws Exception {
+				return uploadPart0(client,request,opts);
+			}
+		};
+	}
+
+	static PartETag uploadPart0(AmazonS3 client, UploadPartRequest request, S3MultipartOptions<?> opts) throws IOException, InterruptedException {
+
+		final String objectId = request.getUploadId();
+		final int partNumber = request.getPartNumber();
+
+		int attempt=0;
+		PartETag result=null;
+		while( result == null ) {
+			attempt++;
+			try {
+				log.trace("Uploading part {} with length {} attempt {} for {} ", partNumber, request.getPartSize(), attempt, objectId);
+				result = client.uploadPart(request).getPartETag();
+			}
+			catch (AmazonClientException e) {
+				if( attempt >= opts.getMaxAttempts() )
+					throw new IOException("Failed to upload multipart data to Amazon S3", e);
+
+				log.debug("Failed to upload part {} attempt {} for {} -- Caused by: {}", partNumber, attempt, objectId, e.getMessage());
+				Thread.sleep(opts.getRetrySleepWithAttempt(attempt));
+			}
+		}
+
+		return result;
+	}
+
 	static Callable<CopyPartResult> copyPart( final AmazonS3 client, final CopyPartRequest request, final S3MultipartOptions opts ) {
 		return new Callable<CopyPartResult>() {
 			@Override
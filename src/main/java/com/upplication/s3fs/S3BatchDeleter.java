@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Deletes the objects of a bucket with multi-object delete requests.
+ * <p>
+ * The keys are grouped in batches of {@link #MAX_KEYS} keys, the max allowed by S3 in a single
+ * request, and each batch is deleted in background as soon as it is full, so that the keys
+ * can be added while listing them. The number of batches in flight is bounded.
+ */
+class S3BatchDeleter {
+
+    private static final Logger log = LoggerFactory.getLogger(S3BatchDeleter.class);
+
+    /**
+     * Max number of keys in a delete request
+     */
+    static final int MAX_KEYS = 1000;
+
+    /**
+     * Number of threads running the delete requests, each request deletes up to {@link #MAX_KEYS} objects
+     * thus a few threads are enough to reach the S3 request rate limits
+     */
+    static final int MAX_THREADS = 4;
+
+    private final AmazonS3Client client;
+
+    private final String bucket;
+
+    private final ExecutorService executor;
+
+    private final int maxInFlight;
+
+    private final Deque<Future<List<DeleteError>>> pending = new ArrayDeque<>();
+
+    private final List<DeleteError> errors = new ArrayList<>();
+
+    private List<KeyVersion> batch = new ArrayList<>();
+
+    private long count;
+
+    /**
+     * @param client The S3 client
+     * @param bucket The bucket of the objects to delete
+     * @param executor The executor running the delete requests
+     * @param maxInFlight The max number of delete requests submitted and not completed yet
+     */
+    S3BatchDeleter(AmazonS3Client client, String bucket, ExecutorService executor, int maxInFlight) {
+        if( maxInFlight < 1 )
+            throw new IllegalArgumentException("'maxInFlight' must be greater than zero");
+        this.client = requireNonNull(client);
+        this.bucket = requireNonNull(bucket);
+        this.executor = requireNonNull(executor);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Add a key to delete
+     *
+     * @param key The object key
+     * @throws IOException When a previous delete request failed
+     */
+    void add(String key) throws IOException {
+        batch.add(new KeyVersion(key));
+        count++;
+        if( batch.size() == MAX_KEYS )
+            submit();
+    }
+
+    /**
+     * Delete the keys not submitted yet and wait for the completion of all the requests
+     *
+     * @throws IOException When one or more objects cannot be deleted
+     */
+    void await() throws IOException {
+        if( !batch.isEmpty() )
+            submit();
+        while( !pending.isEmpty() )
+            collect(pending.poll());
+
+        if( !errors.isEmpty() )
+            throw failure(bucket, errors);
+        log.trace("Deleted {} keys from bucket {}", count, bucket);
+    }
+
+    private void submit() throws IOException {
+        if( pending.size() >= maxInFlight )
+            collect(pending.poll());
+
+        final DeleteObjectsRequest request = new DeleteObjectsRequest(bucket)
+                .withKeys(batch)
+                .withQuiet(true);
+        batch = new ArrayList<>();
+        pending.add(executor.submit(new Callable<List<DeleteError>>() {
+            @Override
+            public List<DeleteError> call() {
+                return delete(client, request);
+            }
+        }));
+    }
+
+    private void collect(Future<List<DeleteError>> future) throws IOException {
+        try {
+            errors.addAll(future.get());
+        }
+        catch (ExecutionException e) {
+            cancel();
+            throw new IOException("Unable to delete objects in bucket " + bucket, e.getCause());
+        }
+        catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while deleting objects in bucket " + bucket);
+        }
+    }
+
+    private void cancel() {
+        for( Future<?> it : pending )
+            it.cancel(true);
+        pending.clear();
+    }
+
+    /**
+     * Run a multi-object delete request
+     *
+     * @return The keys that could not be deleted, if any
+     */
+    static List<DeleteError> delete(AmazonS3Client client, DeleteObjectsRequest request) {
+        try {
+            client.deleteObjects(request);
+            return Collections.emptyList();
+        }
+        catch (MultiObjectDeleteException e) {
+            return e.getErrors();
+        }
+    }
+
+    /** holds a singleton executor instance running the delete requests */
+    static private volatile ExecutorService executorSingleton;
+
+    /**
+     * Creates a singleton executor instance, separated from the upload one so that
+     * a large delete does not compete with the uploads for the same threads
+     *
+     * @return The executor instance
+     */
+    static synchronized ExecutorService getOrCreateExecutor() {
+        if( executorSingleton == null ) {
+            // daemon threads, so that a pending delete does not prevent the JVM to exit
+            executorSingleton = Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "s3-delete");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorSingleton;
+    }
+
+    /**
+     * Shutdown the executor and clear the singleton
+     */
+    public static synchronized void shutdownExecutor() {
+        if( executorSingleton != null ) {
+            executorSingleton.shutdownNow();
+            executorSingleton = null;
+        }
+    }
+
+    static IOException failure(String bucket, List<DeleteError> errors) {
+        final DeleteError first = errors.get(0);
+        return new IOException(String.format("Unable to delete %d object(s) in bucket %s -- first failed key: %s; error: %s %s",
+                errors.size(), bucket, first.getKey(), first.getCode(), first.getMessage()));
+    }
+}
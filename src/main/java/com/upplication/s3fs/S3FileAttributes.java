@@ -46,6 +46,9 @@ package com.upplication.s3fs;
 
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import static java.lang.String.format;
 
@@ -66,6 +69,33 @@ public class S3FileAttributes implements BasicFileAttributes {
 		regularFile = isRegularFile;
 	}
 
+	/**
+	 * Create the attributes of a file listed in a directory
+	 *
+	 * @param summary The file object summary
+	 * @return The file attributes
+	 */
+	static S3FileAttributes file(S3ObjectSummary summary) {
+		return new S3FileAttributes(summary.getKey(), lastModifiedTime(summary), summary.getSize(), false, true);
+	}
+
+	/**
+	 * Create the attributes of a directory listed in its parent directory
+	 *
+	 * @param key The directory key, ending with a slash
+	 * @param summary The directory object summary, or {@code null} when there's no object for the directory itself
+	 * @return The directory attributes
+	 */
+	static S3FileAttributes directory(String key, S3ObjectSummary summary) {
+		return new S3FileAttributes(key, lastModifiedTime(summary), 0, true, false);
+	}
+
+	private static FileTime lastModifiedTime(S3ObjectSummary summary) {
+		return summary != null && summary.getLastModified() != null
+				? FileTime.from(summary.getLastModified().getTime(), TimeUnit.MILLISECONDS)
+				: null;
+	}
+
 	@Override
 	public FileTime lastModifiedTime() {
 		return lastModifiedTime;
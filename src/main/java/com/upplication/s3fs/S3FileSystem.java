@@ -47,6 +47,8 @@ package com.upplication.s3fs;
 import com.amazonaws.services.s3.model.Bucket;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.upplication.s3fs.util.S3ListOptions;
+import com.upplication.s3fs.util.S3ObjectSummaryCache;
 
 import java.io.IOException;
 import java.nio.file.FileStore;
@@ -56,6 +58,7 @@ import java.nio.file.PathMatcher;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.Properties;
 import java.util.Set;
 
 public class S3FileSystem extends FileSystem {
@@ -63,12 +66,21 @@ public class S3FileSystem extends FileSystem {
 	private final S3FileSystemProvider provider;
 	private final AmazonS3Client client;
 	private final String endpoint;
+	private final S3ListOptions listOptions;
+	private final S3ObjectSummaryCache summaryCache;
 
 	public S3FileSystem(S3FileSystemProvider provider, AmazonS3Client client,
 			String endpoint) {
+		this(provider, client, endpoint, null);
+	}
+
+	public S3FileSystem(S3FileSystemProvider provider, AmazonS3Client client,
+			String endpoint, Properties props) {
 		this.provider = provider;
 		this.client = client;
 		this.endpoint = endpoint;
+		this.listOptions = props != null ? new S3ListOptions(props) : new S3ListOptions();
+		this.summaryCache = props != null ? new S3ObjectSummaryCache(props) : new S3ObjectSummaryCache();
 	}
 
 	@Override
@@ -154,4 +166,18 @@ public class S3FileSystem extends FileSystem {
 	public String getEndpoint() {
 		return endpoint;
 	}
+
+	/**
+	 * @return The options used to list the objects of this fileSystem
+	 */
+	public S3ListOptions getListOptions() {
+		return listOptions;
+	}
+
+	/**
+	 * @return The cache of the object summaries looked up or listed through this fileSystem
+	 */
+	public S3ObjectSummaryCache getSummaryCache() {
+		return summaryCache;
+	}
 }
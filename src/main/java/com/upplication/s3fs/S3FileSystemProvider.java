@@ -52,19 +52,25 @@ import com.amazonaws.auth.BasicSessionCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AccessControlList;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.Grant;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.Owner;
 import com.amazonaws.services.s3.model.Permission;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.upplication.s3fs.util.FileTypeDetector;
 import com.upplication.s3fs.util.IOUtils;
-import com.upplication.s3fs.util.S3MultipartOptions;
+import com.upplication.s3fs.util.S3DownloadOptions;
 import com.upplication.s3fs.util.S3ObjectSummaryLookup;
+import com.upplication.s3fs.util.S3ObjectSummaryCache;
 import com.upplication.s3fs.util.S3UploadRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -78,6 +84,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.AccessMode;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
@@ -85,7 +92,9 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
 import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
@@ -98,10 +107,12 @@ import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -248,14 +259,22 @@ public class S3FileSystemProvider extends FileSystemProvider {
         final S3Path s3Path = (S3Path) dir;
 
         return new DirectoryStream<Path>() {
+
+            private final List<S3Iterator> iterators = new ArrayList<>();
+
             @Override
-            public void close() throws IOException {
-                // nothing to do here
+            public synchronized void close() throws IOException {
+                // stop the listing of the pages not consumed, for all the iterators created
+                for( S3Iterator it : iterators )
+                    it.close();
+                iterators.clear();
             }
 
             @Override
-            public Iterator<Path> iterator() {
-                return new S3Iterator(s3Path.getFileSystem(), s3Path.getBucket(), s3Path.getKey() + "/");
+            public synchronized Iterator<Path> iterator() {
+                final S3Iterator result = new S3Iterator(s3Path.getFileSystem(), s3Path.getBucket(), s3Path.getKey() + "/");
+                iterators.add(result);
+                return result;
             }
         };
     }
@@ -274,10 +293,42 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		Preconditions.checkArgument(!s3Path.getKey().equals(""),
 				"cannot create InputStream for root directory: %s", s3Path);
 
+		final AmazonS3Client client = s3Path.getFileSystem().getClient();
+		final S3DownloadOptions opts = props != null ? new S3DownloadOptions(props) : new S3DownloadOptions();
+
 		InputStream result;
 		try {
-			result = s3Path.getFileSystem().getClient()
-					.getObject(s3Path.getBucket(), s3Path.getKey())
+			// fetch the first chunk, when the object is larger the remaining
+			// chunks are downloaded in parallel by using ranged requests
+			S3Object object = client.getObject(new GetObjectRequest(s3Path.getBucket(), s3Path.getKey()).withRange(0, opts.getChunkSize()-1));
+			result = object.getObjectContent();
+
+			if (result == null)
+				throw new IOException(String.format("The specified path is a directory: %s", path));
+
+			ObjectMetadata meta = object.getObjectMetadata();
+			if (meta.getContentRange() != null && meta.getInstanceLength() > meta.getContentLength()) {
+				result = new S3ParallelInputStream(client, s3Path.toS3ObjectId(), object, opts);
+			}
+		}
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404)
+				throw new NoSuchFileException(path.toString());
+			// an empty object cannot satisfy any range, just fetch it
+			if (e.getStatusCode() == 416)
+				return getObjectContent(s3Path);
+			// otherwise throws a generic IO exception
+			throw new IOException(String.format("Cannot access file: %s", path),e);
+		}
+
+		return result;
+	}
+
+	private InputStream getObjectContent(S3Path path) throws IOException {
+		InputStream result;
+		try {
+			result = path.getFileSystem().getClient()
+					.getObject(path.getBucket(), path.getKey())
 					.getObjectContent();
 
 			if (result == null)
@@ -307,45 +358,115 @@ public class S3FileSystemProvider extends FileSystemProvider {
 				return super.newOutputStream(path, options);
 			}
 
-			if (opts.contains(StandardOpenOption.READ)) {
-				throw new IllegalArgumentException("READ not allowed");
-			}
+			checkWriteOptions(s3Path, opts);
+		}
 
-			boolean create = opts.remove(StandardOpenOption.CREATE);
-			boolean createNew = opts.remove(StandardOpenOption.CREATE_NEW);
-			boolean truncateExisting = opts.remove(StandardOpenOption.TRUNCATE_EXISTING);
+		return createUploaderOutputStream(s3Path, null);
+	}
 
-			// remove irrelevant/ignored options
-			opts.remove(StandardOpenOption.WRITE);
-			opts.remove(StandardOpenOption.SPARSE);
+	/**
+	 * Wait for the completion of the uploads of all the output streams closed
+	 * by {@link S3OutputStream#closeAsync()}
+	 *
+	 * @throws IOException When one or more uploads failed
+	 */
+	public void awaitPendingUploads() throws IOException {
+		S3OutputStream.awaitPendingUploads();
+	}
 
-			if (!opts.isEmpty()) {
-				throw new UnsupportedOperationException(opts.iterator().next() + " not supported");
-			}
+	/**
+	 * Walks a file tree like {@link Files#walkFileTree(Path, FileVisitor)} by issuing
+	 * a single listing of all the objects under the start directory, instead of
+	 * one listing for each directory and one request for the attributes of each entry
+	 *
+	 * @param start The starting path
+	 * @param visitor The file visitor to invoke for each file
+	 * @throws IOException When thrown by the visitor
+	 */
+	public void walkFileTree(Path start, FileVisitor<? super Path> visitor) throws IOException {
+		walkFileTree(start, Integer.MAX_VALUE, visitor);
+	}
 
-			if (!(create && truncateExisting)) {
-				if (exists(s3Path)) {
-					if (createNew || !truncateExisting) {
-						throw new FileAlreadyExistsException(path.toString());
-					}
-				} else {
-					if (!createNew && !create) {
-						throw new NoSuchFileException(path.toString());
-					}
+	/**
+	 * Walks a file tree like {@link Files#walkFileTree(Path, java.util.Set, int, FileVisitor)}
+	 * by issuing a single listing of all the objects under the start directory
+	 *
+	 * @param start The starting path
+	 * @param maxDepth The maximum number of directory levels to visit
+	 * @param visitor The file visitor to invoke for each file
+	 * @throws IOException When thrown by the visitor
+	 */
+	public void walkFileTree(Path start, int maxDepth, FileVisitor<? super Path> visitor) throws IOException {
+		Preconditions.checkArgument(start instanceof S3Path,
+				"path must be an instance of %s", S3Path.class.getName());
+		final S3Path s3Path = (S3Path) start;
+
+		BasicFileAttributes attrs;
+		try {
+			attrs = readAttributes(s3Path, BasicFileAttributes.class);
+		}
+		catch (IOException e) {
+			visitor.visitFileFailed(s3Path, e);
+			return;
+		}
+
+		new S3FileTreeWalker(s3Path.getFileSystem().getListOptions(), maxDepth, visitor).walk(s3Path, attrs);
+	}
+
+	/**
+	 * Validates the options to write a S3 object in streaming mode, checking the
+	 * target existence when required
+	 */
+	private void checkWriteOptions(S3Path path, Set<OpenOption> opts) throws IOException {
+		if (opts.contains(StandardOpenOption.READ)) {
+			throw new IllegalArgumentException("READ not allowed");
+		}
+
+		boolean create = opts.remove(StandardOpenOption.CREATE);
+		boolean createNew = opts.remove(StandardOpenOption.CREATE_NEW);
+		boolean truncateExisting = opts.remove(StandardOpenOption.TRUNCATE_EXISTING);
+
+		// remove irrelevant/ignored options
+		opts.remove(StandardOpenOption.WRITE);
+		opts.remove(StandardOpenOption.SPARSE);
+
+		if (!opts.isEmpty()) {
+			throw new UnsupportedOperationException(opts.iterator().next() + " not supported");
+		}
+
+		if (!(create && truncateExisting)) {
+			if (exists(path)) {
+				if (createNew || !truncateExisting) {
+					throw new FileAlreadyExistsException(path.toString());
+				}
+			} else {
+				if (!createNew && !create) {
+					throw new NoSuchFileException(path.toString());
 				}
 			}
 		}
-
-		return createUploaderOutputStream(s3Path);
 	}
 
-	private S3OutputStream createUploaderOutputStream( S3Path fileToUpload ) {
+	private S3OutputStream createUploaderOutputStream( final S3Path fileToUpload, String contentType ) {
 		AmazonS3 s3 = fileToUpload.getFileSystem().getClient().client;
 
 		S3UploadRequest req = props != null ? new S3UploadRequest(props) : new S3UploadRequest();
 		req.setObjectId(fileToUpload.toS3ObjectId());
+		if (contentType != null) {
+			if (req.getMetadata() == null)
+				req.setMetadata(new ObjectMetadata());
+			req.getMetadata().setContentType(contentType);
+		}
 
-		return new S3OutputStream(s3,req);
+		invalidate(fileToUpload);
+		S3OutputStream result = new S3OutputStream(s3,req);
+		result.setCompletionListener(new Runnable() {
+			@Override
+			public void run() {
+				invalidate(fileToUpload);
+			}
+		});
+		return result;
 	}
 
 	@Override
@@ -355,6 +476,17 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		Preconditions.checkArgument(path instanceof S3Path,
 				"path must be an instance of %s", S3Path.class.getName());
 		final S3Path s3Path = (S3Path) path;
+
+		// read-only access does not need a local copy of the object
+		if (isReadOnly(options)) {
+			return newReadableByteChannel(s3Path);
+		}
+
+		// sequential write access is streamed straight to S3 without a local copy
+		if (isSequentialWrite(options)) {
+			return newWritableByteChannel(s3Path, options);
+		}
+
 		// we resolve to a file inside the temp folder with the s3path name
         final Path tempFile = createTempDir().resolve(path.getFileName().toString());
 
@@ -414,6 +546,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
                     s3Path.getFileSystem().
                         getClient().deleteObject(s3Path.getBucket(), s3Path.getKey());
                 }
+				invalidate(s3Path);
 				// and delete the temp dir
                 Files.deleteIfExists(tempFile);
                 Files.deleteIfExists(tempFile.getParent());
@@ -452,6 +585,53 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		};
 	}
 
+	private boolean isReadOnly(Set<? extends OpenOption> options) {
+		for (OpenOption it : options) {
+			if (it != StandardOpenOption.READ && it != LinkOption.NOFOLLOW_LINKS)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return {@code true} when the options ask to overwrite the whole object (i.e. {@code WRITE}
+	 * 		and {@code TRUNCATE_EXISTING}), thus the content can be streamed without a local copy of the object
+	 */
+	private boolean isSequentialWrite(Set<? extends OpenOption> options) {
+		if (!options.contains(StandardOpenOption.WRITE) || !options.contains(StandardOpenOption.TRUNCATE_EXISTING))
+			return false;
+		for (OpenOption it : options) {
+			if (it != StandardOpenOption.WRITE
+					&& it != StandardOpenOption.CREATE
+					&& it != StandardOpenOption.TRUNCATE_EXISTING
+					&& it != StandardOpenOption.SPARSE)
+				return false;
+		}
+		return true;
+	}
+
+	private SeekableByteChannel newWritableByteChannel(S3Path path, Set<? extends OpenOption> options) throws IOException {
+		checkWriteOptions(path, new LinkedHashSet<OpenOption>(options));
+		final String contentType = new FileTypeDetector().probeContentType(path.getFileName().toString());
+		return new S3WritableByteChannel(createUploaderOutputStream(path, contentType), path.toString());
+	}
+
+	private SeekableByteChannel newReadableByteChannel(S3Path path) throws IOException {
+		final S3DownloadOptions opts = props != null ? new S3DownloadOptions(props) : new S3DownloadOptions();
+		final ObjectMetadata meta;
+		try {
+			meta = path.getFileSystem().getClient().getObjectMetadata(path.getBucket(), path.getKey());
+		}
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404)
+				throw new NoSuchFileException(path.toString());
+			// otherwise throws a generic IO exception
+			throw new IOException(String.format("Cannot access file: %s", path),e);
+		}
+
+		return new S3SeekableByteChannel(path.getFileSystem().getClient(), path.toS3ObjectId(), meta.getContentLength(), meta.getETag(), opts);
+	}
+
 	/**
 	 * Deviations from spec: Does not perform atomic check-and-create. Since a
 	 * directory is just an S3 object, all directories in the hierarchy are
@@ -478,6 +658,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
 				.getClient()
 				.putObject(s3Path.getBucket(), keyName,
 						new ByteArrayInputStream(new byte[0]), metadata);
+		invalidate(s3Path);
 	}
 
 	@Override
@@ -487,28 +668,97 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
 		S3Path s3Path = (S3Path) path;
 
-        if (Files.notExists(path)){
-            throw new NoSuchFileException("the path: " + path + " not exists");
-        }
+		// a single lookup tells if the path exists and if it is a directory
+		BasicFileAttributes attrs;
+		try {
+			attrs = readAttributes(s3Path, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			throw new NoSuchFileException("the path: " + path + " not exists");
+		}
 
-        if (Files.isDirectory(path)){
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)){
-                if (stream.iterator().hasNext()){
-                    throw new DirectoryNotEmptyException("the path: " + path + " is a directory and is not empty");
-                }
-            }
-        }
+		if (attrs.isDirectory() && !isEmptyDirectory(s3Path)) {
+			throw new DirectoryNotEmptyException("the path: " + path + " is a directory and is not empty");
+		}
+
+		// we delete the two objects (sometimes exists the key '/' and sometimes not) with a single request
+		DeleteObjectsRequest request = new DeleteObjectsRequest(s3Path.getBucket())
+				.withKeys(s3Path.getKey(), s3Path.getKey() + "/")
+				.withQuiet(true);
+		List<DeleteError> errors = S3BatchDeleter.delete(s3Path.getFileSystem().getClient(), request);
+		invalidate(s3Path);
+		if (!errors.isEmpty()) {
+			throw S3BatchDeleter.failure(s3Path.getBucket(), errors);
+		}
+	}
+
+	/**
+	 * Delete a path and, when it is a directory, all its content.
+	 * <p>
+	 * The directory content is listed with a single flat listing and the objects are
+	 * removed with multi-object delete requests, submitted in parallel while listing.
+	 *
+	 * @param path The path to delete
+	 * @throws NoSuchFileException When the path does not exist
+	 * @throws IOException When one or more objects cannot be deleted
+	 */
+	public void deleteRecursively(Path path) throws IOException {
+		Preconditions.checkArgument(path instanceof S3Path,
+				"path must be an instance of %s", S3Path.class.getName());
+
+		S3Path s3Path = (S3Path) path;
+		if (!exists(s3Path)) {
+			throw new NoSuchFileException("the path: " + path + " not exists");
+		}
+
+		final S3FileSystem fs = s3Path.getFileSystem();
+		final String key = s3Path.getKey();
+		final String prefix = directoryPrefix(s3Path);
+		final S3BatchDeleter deleter = new S3BatchDeleter(fs.getClient(), s3Path.getBucket(),
+				S3BatchDeleter.getOrCreateExecutor(), S3BatchDeleter.MAX_THREADS);
 
-		// we delete the two objects (sometimes exists the key '/' and sometimes not)
-		s3Path.getFileSystem().getClient()
-			.deleteObject(s3Path.getBucket(), s3Path.getKey());
-		s3Path.getFileSystem().getClient()
-			.deleteObject(s3Path.getBucket(), s3Path.getKey() + "/");
+		try {
+			if (!key.isEmpty()) {
+				deleter.add(key);
+				if (!prefix.equals(key))
+					deleter.add(prefix);
+			}
+
+			ListObjectsV2Request request = new ListObjectsV2Request()
+					.withBucketName(s3Path.getBucket())
+					.withPrefix(prefix)
+					.withMaxKeys(fs.getListOptions().getPageSize())
+					.withFetchOwner(false);
+			try (S3ParallelLister lister = new S3ParallelLister(fs.getClient(), request, fs.getListOptions())) {
+				while (lister.hasNext()) {
+					for (S3ObjectSummary summary : lister.next().getObjectSummaries()) {
+						if (!summary.getKey().equals(prefix))
+							deleter.add(summary.getKey());
+					}
+				}
+			}
+			deleter.await();
+		}
+		finally {
+			s3Path.setAttributes(null);
+			fs.getSummaryCache().invalidateTree(s3Path.getBucket(), key);
+		}
 	}
 
 	@Override
 	public void copy(Path source, Path target, CopyOption... options)
 			throws IOException {
+		// a local file, upload it without going through an output stream
+		if (source.getFileSystem() == FileSystems.getDefault()) {
+			upload(source, target, options);
+			return;
+		}
+		// a local target, download the object without going through an input stream
+		if (target.getFileSystem() == FileSystems.getDefault()) {
+			download(source, target, options);
+			return;
+		}
+
 		Preconditions.checkArgument(source instanceof S3Path,
 				"source must be an instance of %s", S3Path.class.getName());
 		Preconditions.checkArgument(target instanceof S3Path,
@@ -530,6 +780,83 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING),
 				actualOptions);
 
+		// the source metadata is fetched once and reused by the copy itself
+		final ObjectMetadata sourceMetadata;
+		try {
+			sourceMetadata = s3Source.getFileSystem().getClient().getObjectMetadata(s3Source.getBucket(), s3Source.getKey());
+		}
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404)
+				throw new NoSuchFileException(source.toString());
+			throw new IOException(String.format("Cannot access file: %s", source), e);
+		}
+
+		if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
+			if (objectExists(s3Target)) {
+				throw new FileAlreadyExistsException(format(
+						"target already exists: %s", target));
+			}
+		}
+
+		createTreeCopier(s3Source).copyObject(s3Source, s3Target, sourceMetadata);
+		invalidate(s3Target);
+	}
+
+	/**
+	 * Check if an object exists with the exact key of the given path, with at most a single
+	 * HEAD request. Unlike {@link #exists(S3Path)} no listing is done to find a directory
+	 * with the same name, since a copy of an object does not overwrite it.
+	 *
+	 * @param path The object path
+	 * @return {@code true} when the object exists or the path is known to exist
+	 */
+	private boolean objectExists(S3Path path) {
+		if (listedAttributes(path) != null)
+			return true;
+
+		final S3ObjectSummaryCache cache = path.getFileSystem().getSummaryCache();
+		if (cache.get(path.getBucket(), path.getKey()) != null)
+			return true;
+		if (cache.isMissing(path.getBucket(), path.getKey()))
+			return false;
+
+		try {
+			path.getFileSystem().getClient().getObjectMetadata(path.getBucket(), path.getKey());
+			return true;
+		}
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404)
+				return false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Upload a file of the default file system. The file length is known up front, so large
+	 * files are uploaded with a multipart upload whose parts are read concurrently from the
+	 * file and uploaded in parallel.
+	 *
+	 * @param local The local file to upload
+	 * @param target The target path
+	 * @param options The copy options, only {@link StandardCopyOption#REPLACE_EXISTING} is supported
+	 * @throws NoSuchFileException When the local file does not exist
+	 * @throws FileAlreadyExistsException When the target exists and {@link StandardCopyOption#REPLACE_EXISTING} is not specified
+	 * @throws IOException When the upload fails
+	 */
+	public void upload(Path local, Path target, CopyOption... options)
+			throws IOException {
+		Preconditions.checkArgument(local.getFileSystem() == FileSystems.getDefault(),
+				"local must be a path of the default file system");
+		Preconditions.checkArgument(target instanceof S3Path,
+				"target must be an instance of %s", S3Path.class.getName());
+
+		final S3Path s3Target = (S3Path) target;
+		ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+		verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING),
+				actualOptions);
+
+		BasicFileAttributes attrs = Files.readAttributes(local, BasicFileAttributes.class);
+
 		if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
 			if (exists(s3Target)) {
 				throw new FileAlreadyExistsException(format(
@@ -537,34 +864,213 @@ public class S3FileSystemProvider extends FileSystemProvider {
 			}
 		}
 
-		AmazonS3Client client = s3Source.getFileSystem() .getClient();
+		// as Files.copy, only the directory itself is copied
+		if (attrs.isDirectory()) {
+			createDirectory(s3Target);
+			return;
+		}
+
+		S3UploadRequest req = props != null ? new S3UploadRequest(props) : new S3UploadRequest();
+		req.setObjectId(s3Target.toS3ObjectId());
+		final String contentType = new FileTypeDetector().probeContentType(local.getFileName().toString());
+		if (contentType != null) {
+			ObjectMetadata metadata = req.getMetadata() != null ? req.getMetadata() : new ObjectMetadata();
+			metadata.setContentType(contentType);
+			req.setMetadata(metadata);
+		}
+
+		invalidate(s3Target);
+		try {
+			s3Target.getFileSystem().getClient().uploadFile(local.toFile(), req);
+		}
+		finally {
+			invalidate(s3Target);
+		}
+	}
+
+	/**
+	 * Download a file to the default file system. The target file is pre-allocated and
+	 * the object chunks are downloaded in parallel with ranged requests, each written at
+	 * its offset in the file.
+	 *
+	 * @param source The file to download
+	 * @param local The local target file
+	 * @param options The copy options, only {@link StandardCopyOption#REPLACE_EXISTING} is supported
+	 * @throws NoSuchFileException When the source does not exist
+	 * @throws FileAlreadyExistsException When the target exists and {@link StandardCopyOption#REPLACE_EXISTING} is not specified
+	 * @throws IOException When the download fails
+	 */
+	public void download(Path source, Path local, CopyOption... options)
+			throws IOException {
+		Preconditions.checkArgument(source instanceof S3Path,
+				"source must be an instance of %s", S3Path.class.getName());
+		Preconditions.checkArgument(local.getFileSystem() == FileSystems.getDefault(),
+				"local must be a path of the default file system");
 
-        final ObjectMetadata sourceObjMetadata = s3Source.getFileSystem().getClient().getObjectMetadata(s3Source.getBucket(), s3Source.getKey());
-		final S3MultipartOptions opts = props != null ? new S3MultipartOptions<>(props) : new S3MultipartOptions();
-		final int chunkSize = opts.getChunkSize();
-		final long length = sourceObjMetadata.getContentLength();
+		final S3Path s3Source = (S3Path) source;
+		ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+		verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING),
+				actualOptions);
 
-		if( length <= chunkSize ) {
+		BasicFileAttributes attrs = readAttributes(s3Source, BasicFileAttributes.class);
 
-			CopyObjectRequest copyObjRequest = new CopyObjectRequest(s3Source.getBucket(), s3Source.getKey(),s3Target.getBucket(), s3Target.getKey());
-			if (sourceObjMetadata.getSSEAlgorithm()!= null) {
-				ObjectMetadata targetObjectMetadata = new ObjectMetadata();
-				targetObjectMetadata.setSSEAlgorithm(sourceObjMetadata.getSSEAlgorithm());
-				copyObjRequest.setNewObjectMetadata(targetObjectMetadata);
+		if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
+			if (Files.exists(local, LinkOption.NOFOLLOW_LINKS)) {
+				throw new FileAlreadyExistsException(format(
+						"target already exists: %s", local));
 			}
+		}
+
+		// as Files.copy, only the directory itself is copied
+		if (attrs.isDirectory()) {
+			if (!Files.isDirectory(local))
+				Files.createDirectory(local);
+			return;
+		}
 
-			client.copyObject(copyObjRequest);
+		final S3DownloadOptions opts = props != null ? new S3DownloadOptions(props) : new S3DownloadOptions();
+		try {
+			s3Source.getFileSystem().getClient().downloadFile(s3Source.toS3ObjectId(), local, opts);
 		}
-		else {
-		 	client.multipartCopyObject(s3Source, s3Target, length, opts);
+		catch (AmazonS3Exception e) {
+			if (e.getStatusCode() == 404)
+				throw new NoSuchFileException(source.toString());
+			throw new IOException(String.format("Cannot download file: %s", source), e);
 		}
 	}
 
+	/**
+	 * Copy a file or a directory and all its content with server-side copies.
+	 * <p>
+	 * The directory content is listed with a single flat listing and the objects are
+	 * copied in parallel, with a bounded number of copies in flight.
+	 *
+	 * @param source The file or directory to copy
+	 * @param target The target path
+	 * @param options The copy options, only {@link StandardCopyOption#REPLACE_EXISTING} is supported
+	 * @throws NoSuchFileException When the source does not exist
+	 * @throws FileAlreadyExistsException When the target exists and {@link StandardCopyOption#REPLACE_EXISTING} is not specified
+	 * @throws IOException When one or more objects cannot be copied
+	 */
+	public void copyRecursively(Path source, Path target, CopyOption... options)
+			throws IOException {
+		Preconditions.checkArgument(source instanceof S3Path,
+				"source must be an instance of %s", S3Path.class.getName());
+		Preconditions.checkArgument(target instanceof S3Path,
+				"target must be an instance of %s", S3Path.class.getName());
+
+		if (isSameFile(source, target)) {
+			return;
+		}
+
+		S3Path s3Source = (S3Path) source;
+		S3Path s3Target = (S3Path) target;
+
+		ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+		verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING),
+				actualOptions);
+
+		BasicFileAttributes attrs = readAttributes(s3Source, BasicFileAttributes.class);
+		if (!attrs.isDirectory()) {
+			copy(source, target, options);
+			return;
+		}
+
+		if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
+			if (exists(s3Target)) {
+				throw new FileAlreadyExistsException(format(
+						"target already exists: %s", target));
+			}
+		}
+
+		try {
+			createTreeCopier(s3Source).copyDirectory(s3Source, s3Target);
+		}
+		finally {
+			s3Target.setAttributes(null);
+			s3Target.getFileSystem().getSummaryCache().invalidateTree(s3Target.getBucket(), s3Target.getKey());
+		}
+	}
 
+	/**
+	 * Move a file or a directory with server-side copies, followed by batched
+	 * deletes of the source objects. The objects of a directory are copied in parallel.
+	 * <p>
+	 * The move is not atomic: when it fails the objects already moved are not restored.
+	 */
 	@Override
 	public void move(Path source, Path target, CopyOption... options)
 			throws IOException {
-		throw new UnsupportedOperationException();
+		Preconditions.checkArgument(source instanceof S3Path,
+				"source must be an instance of %s", S3Path.class.getName());
+		Preconditions.checkArgument(target instanceof S3Path,
+				"target must be an instance of %s", S3Path.class.getName());
+
+		if (isSameFile(source, target)) {
+			return;
+		}
+
+		S3Path s3Source = (S3Path) source;
+		S3Path s3Target = (S3Path) target;
+
+		ImmutableSet<CopyOption> actualOptions = ImmutableSet.copyOf(options);
+		if (actualOptions.contains(StandardCopyOption.ATOMIC_MOVE)) {
+			throw new AtomicMoveNotSupportedException(source.toString(), target.toString(),
+					"Amazon S3 does not support atomic moves");
+		}
+		verifySupportedOptions(EnumSet.of(StandardCopyOption.REPLACE_EXISTING),
+				actualOptions);
+
+		BasicFileAttributes attrs = readAttributes(s3Source, BasicFileAttributes.class);
+
+		if (!actualOptions.contains(StandardCopyOption.REPLACE_EXISTING)) {
+			if (exists(s3Target)) {
+				throw new FileAlreadyExistsException(format(
+						"target already exists: %s", target));
+			}
+		}
+		else {
+			BasicFileAttributes targetAttrs = null;
+			try {
+				targetAttrs = readAttributes(s3Target, BasicFileAttributes.class);
+			}
+			catch (NoSuchFileException e) {
+				// nothing to replace
+			}
+			// a file replaces a file with the copy itself, otherwise the target is removed
+			// before moving, failing when it is a non-empty directory
+			if (targetAttrs != null && (attrs.isDirectory() || targetAttrs.isDirectory())) {
+				delete(s3Target);
+			}
+		}
+
+		S3TreeCopier copier = createTreeCopier(s3Source);
+		try {
+			if (attrs.isDirectory()) {
+				copier.moveDirectory(s3Source, s3Target);
+			}
+			else {
+				copier.copyObject(s3Source, s3Target);
+				DeleteObjectsRequest request = new DeleteObjectsRequest(s3Source.getBucket())
+						.withKeys(s3Source.getKey())
+						.withQuiet(true);
+				List<DeleteError> errors = S3BatchDeleter.delete(s3Source.getFileSystem().getClient(), request);
+				if (!errors.isEmpty()) {
+					throw S3BatchDeleter.failure(s3Source.getBucket(), errors);
+				}
+			}
+		}
+		finally {
+			s3Source.setAttributes(null);
+			s3Source.getFileSystem().getSummaryCache().invalidateTree(s3Source.getBucket(), s3Source.getKey());
+			s3Target.setAttributes(null);
+			s3Target.getFileSystem().getSummaryCache().invalidateTree(s3Target.getBucket(), s3Target.getKey());
+		}
+	}
+
+	private S3TreeCopier createTreeCopier(S3Path source) {
+		final S3UploadRequest opts = props != null ? new S3UploadRequest(props) : new S3UploadRequest();
+		return new S3TreeCopier(source.getFileSystem().getClient(), source.getFileSystem().getListOptions(), opts, opts.getStorageClass());
 	}
 
 	@Override
@@ -588,6 +1094,13 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		Preconditions.checkArgument(s3Path.isAbsolute(),
 				"path must be absolute: %s", s3Path);
 
+		// only check if the file exists, e.g. Files.exists
+		if (modes.length == 0) {
+			if (listedAttributes(s3Path) == null)
+				s3ObjectSummaryLookup.lookup(s3Path);
+			return;
+		}
+
 		AmazonS3Client client = s3Path.getFileSystem().getClient();
 
 		// get ACL and check if the file exists as a side-effect
@@ -653,6 +1166,12 @@ public class S3FileSystemProvider extends FileSystemProvider {
 
 		if (type == BasicFileAttributes.class) {
 
+			// the attributes found when listing the parent directory
+			final S3FileAttributes listed = listedAttributes(s3Path);
+			if (listed != null) {
+				return type.cast(listed);
+			}
+
 			S3ObjectSummary objectSummary = s3ObjectSummaryLookup.lookup(s3Path);
 
 			// parse the data to BasicFileAttributes.
@@ -826,7 +1345,7 @@ public class S3FileSystemProvider extends FileSystemProvider {
 			client.setRegion(props.getProperty("region"));
 		}
 
-		S3FileSystem result = new S3FileSystem(this, client, uri.getHost());
+		S3FileSystem result = new S3FileSystem(this, client, uri.getHost(), props);
 		return result;
 	}
 	
@@ -863,6 +1382,9 @@ public class S3FileSystemProvider extends FileSystemProvider {
 	 * @return true if exists
 	 */
 	private boolean exists(S3Path path) {
+		if (listedAttributes(path) != null) {
+			return true;
+		}
 		try {
             s3ObjectSummaryLookup.lookup(path);
 			return true;
@@ -872,6 +1394,61 @@ public class S3FileSystemProvider extends FileSystemProvider {
 		}
 	}
 
+	/**
+	 * The attributes found when listing the parent directory can be stale as the attributes
+	 * cache entries, thus they are trusted only while the cache is enabled and within its ttl
+	 *
+	 * @param path S3Path
+	 * @return The attributes held by the path or {@code null} if they cannot be trusted
+	 */
+	private static S3FileAttributes listedAttributes(S3Path path) {
+		final S3FileAttributes attributes = path.getAttributes();
+		if (attributes == null)
+			return null;
+		final S3ObjectSummaryCache cache = path.getFileSystem().getSummaryCache();
+		return cache.isEnabled() && path.getAttributesAge() < cache.getTtl() ? attributes : null;
+	}
+
+	/**
+	 * @param path S3Path
+	 * @return The prefix of the objects in the directory denoted by the path
+	 */
+	private static String directoryPrefix(S3Path path) {
+		String key = path.getKey();
+		return key.isEmpty() || key.endsWith("/") ? key : key + "/";
+	}
+
+	/**
+	 * check if the directory has any content, with a single listing request
+	 * @param path S3Path of an existing directory
+	 * @return true if the directory is empty
+	 */
+	private boolean isEmptyDirectory(S3Path path) {
+		String prefix = directoryPrefix(path);
+		ListObjectsV2Request request = new ListObjectsV2Request()
+				.withBucketName(path.getBucket())
+				.withPrefix(prefix)
+				.withMaxKeys(2)
+				.withFetchOwner(false);
+		for (S3ObjectSummary summary : path.getFileSystem().getClient().listObjectsV2(request).getObjectSummaries()) {
+			// ignore the directory object itself
+			if (!summary.getKey().equals(prefix))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Discard the attributes of the path, and remove it and its parent directories
+	 * from the attributes cache after the path has been modified
+	 *
+	 * @param path S3Path
+	 */
+	private void invalidate(S3Path path) {
+		path.setAttributes(null);
+		path.getFileSystem().getSummaryCache().invalidate(path.getBucket(), path.getKey());
+	}
+
 	/**
 	 * Get the Control List, if the path not exists
      * (because the path is a directory and this key isnt created at amazon s3)
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.S3ListOptions;
+import com.upplication.s3fs.util.S3ObjectSummaryCache;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Walks a S3 file tree by using a single listing of all the objects under the start
+ * directory, instead of listing each directory on its own.
+ * <p>
+ * The directory tree is rebuilt in memory from the object keys, then the visitor is invoked
+ * with the same semantic of {@link java.nio.file.Files#walkFileTree(Path, java.util.Set, int, FileVisitor)},
+ * passing the attributes taken from the listed {@link S3ObjectSummary}.
+ */
+class S3FileTreeWalker {
+
+    private final S3ListOptions opts;
+
+    private final FileVisitor<? super Path> visitor;
+
+    private final int maxDepth;
+
+    /**
+     * A directory or file of the tree rebuilt from the listing
+     */
+    private static class Node {
+
+        final String key;
+
+        boolean directory;
+
+        S3ObjectSummary summary;
+
+        /**
+         * The directory entries sorted by name, {@code null} for files
+         */
+        Map<String, Node> children;
+
+        Node(String key) {
+            this.key = key;
+        }
+
+        Node child(String name, String key) {
+            if( children == null )
+                children = new TreeMap<>();
+            Node result = children.get(name);
+            if( result == null ) {
+                result = new Node(key);
+                children.put(name, result);
+            }
+            return result;
+        }
+    }
+
+    S3FileTreeWalker(S3ListOptions opts, int maxDepth, FileVisitor<? super Path> visitor) {
+        if( maxDepth < 0 )
+            throw new IllegalArgumentException("'maxDepth' is negative");
+        this.opts = requireNonNull(opts);
+        this.visitor = requireNonNull(visitor);
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Walk the file tree
+     *
+     * @param start The directory where to start, when it is a file only the file itself is visited
+     * @param attrs The start path attributes
+     * @throws IOException When thrown by the visitor
+     */
+    void walk(S3Path start, BasicFileAttributes attrs) throws IOException {
+        if( !attrs.isDirectory() || maxDepth == 0 ) {
+            visitor.visitFile(start, attrs);
+            return;
+        }
+
+        final Node root = list(start);
+        root.directory = true;
+        visit(start, root, attrs, 0);
+    }
+
+    /**
+     * List all the objects under the given directory and rebuild the directory tree
+     */
+    private Node list(S3Path dir) {
+        final String prefix = dir.getKey().isEmpty() || dir.getKey().endsWith("/") ? dir.getKey() : dir.getKey() + "/";
+        final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(dir.getBucket())
+                .withPrefix(prefix)
+                .withMaxKeys(opts.getPageSize())
+                .withFetchOwner(false);
+
+        final Node root = new Node(prefix);
+        try( S3ParallelLister lister = new S3ParallelLister(dir.getFileSystem().getClient(), request, opts) ) {
+            while( lister.hasNext() ) {
+                final ListObjectsV2Result page = lister.next();
+                for( S3ObjectSummary summary : page.getObjectSummaries() ) {
+                    add(root, prefix, summary);
+                }
+            }
+        }
+        return root;
+    }
+
+    private void add(Node root, String prefix, S3ObjectSummary summary) {
+        final String key = summary.getKey();
+        if( key.length() <= prefix.length() ) {
+            // the start directory object itself
+            return;
+        }
+
+        Node node = root;
+        int begin = prefix.length();
+        int end;
+        while( (end = key.indexOf('/', begin)) != -1 ) {
+            if( end > begin ) {
+                node = node.child(key.substring(begin, end), key.substring(0, end+1));
+                node.directory = true;
+            }
+            begin = end + 1;
+        }
+
+        if( begin < key.length() ) {
+            // a file, a directory with the same name takes precedence
+            node = node.child(key.substring(begin), key);
+            if( !node.directory )
+                node.summary = summary;
+        }
+        else if( node != root ) {
+            // a directory object, i.e. a key ending with a slash
+            node.summary = summary;
+        }
+    }
+
+    /**
+     * Visit a directory and its entries
+     *
+     * @return The result of the visit, {@link FileVisitResult#TERMINATE} to stop the walk
+     */
+    private FileVisitResult visit(S3Path dir, Node node, BasicFileAttributes attrs, int depth) throws IOException {
+        FileVisitResult result = visitor.preVisitDirectory(dir, attrs);
+        if( result == FileVisitResult.SKIP_SUBTREE )
+            return FileVisitResult.CONTINUE;
+        if( result != FileVisitResult.CONTINUE )
+            return result;
+
+        if( node.children != null ) {
+            final S3ObjectSummaryCache cache = dir.getFileSystem().getSummaryCache();
+            for( Map.Entry<String, Node> entry : node.children.entrySet() ) {
+                final Node child = entry.getValue();
+                final S3Path path = (S3Path) dir.resolve(entry.getKey());
+                final S3FileAttributes childAttrs = attributesOf(child);
+                // keep the attributes, so that reading them again does not require a new request
+                path.setAttributes(childAttrs);
+
+                if( child.directory )
+                    cache.putDirectory(path.getBucket(), child.key);
+                else
+                    cache.put(path.getBucket(), child.key, child.summary);
+
+                if( child.directory && depth+1 < maxDepth ) {
+                    result = visit(path, child, childAttrs, depth+1);
+                }
+                else {
+                    result = visitor.visitFile(path, childAttrs);
+                }
+
+                if( result == FileVisitResult.TERMINATE )
+                    return result;
+                if( result == FileVisitResult.SKIP_SIBLINGS )
+                    break;
+            }
+        }
+
+        result = visitor.postVisitDirectory(dir, null);
+        // skipping the siblings has no effect after a directory has been visited
+        return result == FileVisitResult.SKIP_SIBLINGS ? FileVisitResult.CONTINUE : result;
+    }
+
+    private static S3FileAttributes attributesOf(Node node) {
+        return node.directory
+                ? S3FileAttributes.directory(node.key, node.summary)
+                : S3FileAttributes.file(node.summary);
+    }
+}
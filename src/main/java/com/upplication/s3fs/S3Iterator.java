@@ -44,30 +44,46 @@
 
 package com.upplication.s3fs;
 
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.base.Preconditions;
+import com.upplication.s3fs.util.S3ListOptions;
+import com.upplication.s3fs.util.S3ObjectSummaryCache;
 
+import java.io.Closeable;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * S3 iterator over folders at first level.
- * Future verions of this class should be return the elements
- * in a incremental way when the #next() method is called.
+ * <p>
+ * The elements are returned page by page as they are listed by a {@link S3ParallelLister},
+ * while the caller consumes a page the next ones are fetched in background.
  */
-public class S3Iterator implements Iterator<Path> {
+public class S3Iterator implements Iterator<Path>, Closeable {
 
     private S3FileSystem s3FileSystem;
     private String bucket;
     private String key;
+    private S3ListOptions opts;
 
+    /**
+     * The elements of the current page
+     */
     private Iterator<S3Path> it;
 
+    private S3ParallelLister lister;
+
     public S3Iterator(S3FileSystem s3FileSystem, String bucket, String key) {
+        this(s3FileSystem, bucket, key, s3FileSystem.getListOptions());
+    }
+
+    public S3Iterator(S3FileSystem s3FileSystem, String bucket, String key, S3ListOptions opts) {
 
         Preconditions.checkArgument(key != null && key.endsWith("/"), "key %s should be ended with slash '/'", key);
 
@@ -75,6 +91,7 @@ public class S3Iterator implements Iterator<Path> {
         // the only case i dont need the end slash is to list buckets content
         this.key = key.length() == 1 ? "" : key;
         this.s3FileSystem = s3FileSystem;
+        this.opts = opts;
     }
 
     @Override
@@ -84,65 +101,79 @@ public class S3Iterator implements Iterator<Path> {
 
     @Override
     public S3Path next() {
-        return getIterator().next();
+        if( !hasNext() )
+            throw new NoSuchElementException();
+        return it.next();
     }
 
     @Override
     public boolean hasNext() {
-        return getIterator().hasNext();
+        if( lister == null ) {
+            lister = new S3ParallelLister(s3FileSystem.getClient(), buildRequest(), opts);
+            it = Collections.<S3Path>emptyList().iterator();
+        }
+        // move to the next non-empty page, if any
+        while( !it.hasNext() && lister.hasNext() ) {
+            setPage(lister.next());
+        }
+        return it.hasNext();
     }
 
-    private Iterator<S3Path> getIterator() {
-        if (it == null) {
-            List<S3Path> listPath = new ArrayList<>();
-
-            // iterator over this list
-            ObjectListing current = s3FileSystem.getClient().listObjects(buildRequest());
-
-            while (current.isTruncated()) {
-                // parse the elements
-                parseObjectListing(listPath, current);
-                // continue
-                current = s3FileSystem.getClient().listNextBatchOfObjects(current);
-            }
-
-            parseObjectListing(listPath, current);
-
-            it = listPath.iterator();
-        }
+    /**
+     * Stops the listing of the pages not consumed yet
+     */
+    @Override
+    public void close() {
+        if( lister != null )
+            lister.close();
+    }
 
-        return it;
+    /**
+     * Make the given listing the current page
+     */
+    private void setPage(final ListObjectsV2Result listing) {
+        List<S3Path> listPath = new ArrayList<>();
+        parseObjectListing(listPath, listing);
+        it = listPath.iterator();
     }
 
-    private ListObjectsRequest buildRequest(){
+    private ListObjectsV2Request buildRequest(){
 
-        ListObjectsRequest request = new ListObjectsRequest();
+        ListObjectsV2Request request = new ListObjectsV2Request();
         request.setBucketName(bucket);
         request.setPrefix(key);
-        request.setMarker(key);
+        request.setStartAfter(key);
         request.setDelimiter("/");
+        request.setMaxKeys(opts.getPageSize());
+        request.setFetchOwner(false);
         return request;
     }
 
     /**
      * add to the listPath the elements at the same level that s3Path
      * @param listPath List not null list to add
-     * @param current ObjectListing to walk
+     * @param current ListObjectsV2Result to walk
      */
-    private void parseObjectListing(List<S3Path> listPath, ObjectListing current) {
+    private void parseObjectListing(List<S3Path> listPath, ListObjectsV2Result current) {
+
+        final S3ObjectSummaryCache cache = s3FileSystem.getSummaryCache();
 
         // add all the objects i.e. the files
         for (final S3ObjectSummary objectSummary : current.getObjectSummaries()) {
             final String key = objectSummary.getKey();
             final S3Path path = new S3Path(s3FileSystem, "/" + bucket, key.split("/"));
-            path.setObjectSummary(objectSummary);
+            path.setAttributes(S3FileAttributes.file(objectSummary));
+            cache.put(bucket, key, objectSummary);
             listPath.add(path);
         }
 
         // add all the common prefixes i.e. the directories
         for(final String dir : current.getCommonPrefixes()) {
             if( dir.equals("/") ) continue;
-            listPath.add(new S3Path(s3FileSystem, "/" + bucket, dir));
+            cache.putDirectory(bucket, dir);
+            final S3Path path = new S3Path(s3FileSystem, "/" + bucket, dir);
+            path.setAttributes(S3FileAttributes.directory(dir, null));
+            listPath.add(path);
         }
 
     }
@@ -20,23 +20,35 @@
 
 package com.upplication.s3fs;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
 import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Phaser;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.s3.AmazonS3;
@@ -52,7 +64,9 @@ import com.amazonaws.services.s3.model.StorageClass;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.util.Base64;
 import com.upplication.s3fs.util.ByteBufferInputStream;
+import com.upplication.s3fs.util.ByteBufferPool;
 import com.upplication.s3fs.util.S3UploadRequest;
+import com.upplication.s3fs.util.SpillFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import static java.util.Objects.requireNonNull;
@@ -60,6 +74,13 @@ import static java.util.Objects.requireNonNull;
 /**
  * Parallel S3 multipart uploader. Based on the following code request
  * See https://github.com/Upplication/Amazon-S3-FileSystem-NIO2/pulls
+ * <p>
+ * The part buffers are taken from a pool shared by all the streams, bounded by the
+ * {@code upload_buffer_memory} option. Each open stream holds the buffer of its current part,
+ * thus a thread writing to more than {@code upload_buffer_memory / chunkSize} streams at the
+ * same time waits at most {@code upload_buffer_wait} milliseconds for a buffer, then it
+ * uses a heap buffer outside the budget, instead of waiting for a buffer only its own
+ * streams can release.
  *
  * @author Paolo Di Tommaso
  * @author Tom Wieczorek
@@ -97,6 +118,21 @@ public final class S3OutputStream extends OutputStream {
 
     private static final Logger log = LoggerFactory.getLogger(S3OutputStream.class);
 
+    /**
+     * The min size of a part allowed by S3, except the last one
+     */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * The max size of a part, bounded by the max capacity of a {@link ByteBuffer}
+     */
+    static final int MAX_PART_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * Number of parts uploaded before doubling the part size
+     */
+    static final int PARTS_PER_SIZE_STEP = 1000;
+
 
     /**
      * Amazon S3 API implementation to use.
@@ -128,6 +164,17 @@ public final class S3OutputStream extends OutputStream {
      */
     private volatile boolean aborted;
 
+    /**
+     * The first error raised by the upload of a part, reported to the writer by the next
+     * {@code write}, {@code flush} or {@code close} operation
+     */
+    private volatile IOException failure;
+
+    /**
+     * Invoked once the object has been uploaded
+     */
+    private volatile Runnable completionListener;
+
     /**
      * If a multipart upload is in progress, holds the ID for it, {@code null} otherwise.
      */
@@ -144,10 +191,17 @@ public final class S3OutputStream extends OutputStream {
     private final S3UploadRequest request;
 
     /**
-     * Instead of allocate a new buffer for each chunks recycle them, putting
-     * a buffer instance into this queue when the upload process is completed
+     * Instead of allocate a new buffer for each chunks recycle them, releasing
+     * a buffer instance into this pool when the upload process is completed.
+     * The pool is shared by all the streams to bound the overall memory used
      */
-    final private Queue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+    final private ByteBufferPool bufferPool;
+
+    /**
+     * Local file holding the parts which cannot get a buffer from the pool, created
+     * on demand when the spill directory is specified, {@code null} otherwise
+     */
+    private volatile SpillFile spillFile;
 
     /**
      * The executor service (thread pool) which manages the upload in background
@@ -159,7 +213,16 @@ public final class S3OutputStream extends OutputStream {
      */
     private ByteBuffer buf;
 
-    private MessageDigest md5;
+    /**
+     * The buffers already filled with the data of the current part, when the part
+     * is held by more than one buffer (i.e. while the first part is growing)
+     */
+    private List<ByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * The pending close operation when the stream has been closed by {@link #closeAsync()}
+     */
+    private Future<Void> closeFuture;
 
     /**
      * Phaser object to synchronize stream termination
@@ -198,18 +261,28 @@ public final class S3OutputStream extends OutputStream {
         this.storageClass = request.getStorageClass();
         this.request = request;
         this.chunkSize = request.getChunkSize();
+        this.bufferPool = getOrCreateBufferPool(request.getBufferMemory());
     }
 
-    private ByteBuffer expandBuffer(ByteBuffer byteBuffer) {
-        
-        final float expandFactor = 2.5f;
-        final int newCapacity = Math.min( (int)(byteBuffer.capacity() * expandFactor), chunkSize );
-
-        byteBuffer.flip();
-        ByteBuffer expanded = ByteBuffer.allocate(newCapacity);
-        expanded.order(byteBuffer.order());
-        expanded.put(byteBuffer);
-        return expanded;
+    /**
+     * Defines the size of a part given its number. The upload starts with small parts, doubling
+     * the size of each part until reaching the chunk size, so that the upload of a stream begins
+     * as soon as possible. Then the part size is doubled every {@link #PARTS_PER_SIZE_STEP} parts,
+     * up to {@link #MAX_PART_SIZE}, so that objects of several terabytes fit in the 10,000 parts
+     * allowed by S3 without knowing the stream size in advance.
+     *
+     * @param chunkSize The configured upload chunk size
+     * @param partNumber The part number (1-based)
+     * @return The size of the part in bytes
+     */
+    static int partSize(int chunkSize, int partNumber) {
+        final int index = partNumber - 1;
+        // ramp up to the chunk size
+        if( index < 16 && ((long)MIN_PART_SIZE << index) < chunkSize )
+            return MIN_PART_SIZE << index;
+        // grow as the stream proves to be large
+        final int step = Math.min(index / PARTS_PER_SIZE_STEP, 16);
+        return (int) Math.max(chunkSize, Math.min((long)chunkSize << step, MAX_PART_SIZE));
     }
 
 
@@ -225,6 +298,49 @@ public final class S3OutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Computes the MD5 checksum of the data held by the given part, i.e. the remaining
+     * bytes of its buffers. The buffers position and limit are not modified
+     *
+     * @param part The buffers holding the part data
+     * @return The MD5 digest
+     */
+    private byte[] checksum(List<ByteBuffer> part) {
+        final MessageDigest md5 = createMd5();
+        for( ByteBuffer it : part )
+            md5.update(it.duplicate());
+        return md5.digest();
+    }
+
+    /**
+     * @return A stream reading the remaining bytes of the given buffers, without modifying them
+     */
+    private static InputStream toInputStream(List<ByteBuffer> part) {
+        final List<InputStream> streams = new ArrayList<>(part.size());
+        for( ByteBuffer it : part )
+            streams.add(new ByteBufferInputStream(it.duplicate()));
+        return streams.size() == 1 ? streams.get(0) : new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    /**
+     * @return The number of remaining bytes of the given buffers
+     */
+    private static long length(List<ByteBuffer> part) {
+        long result = 0;
+        for( ByteBuffer it : part )
+            result += it.remaining();
+        return result;
+    }
+
+    /**
+     * Set the buffers of the given part in read mode
+     */
+    private static List<ByteBuffer> flip(List<ByteBuffer> part) {
+        for( ByteBuffer it : part )
+            it.flip();
+        return part;
+    }
+
 
     /**
      * Writes a byte into the uploader buffer. When it is full starts the upload process
@@ -235,25 +351,80 @@ public final class S3OutputStream extends OutputStream {
      */
     @Override
     public void write (int b) throws IOException {
+        checkFailure();
+        prepareBuffer();
+        buf.put((byte) b);
+    }
+
+    /**
+     * Writes {@code len} bytes from the specified byte array into the uploader buffer.
+     * The data is copied in slices, splitting at the chunk boundaries, each time the
+     * buffer is full the upload of the chunk is started in a asynchronous manner
+     *
+     * @param b The data to be written
+     * @param off The start offset in the data
+     * @param len The number of bytes to write
+     * @throws IOException
+     */
+    @Override
+    public void write (byte[] b, int off, int len) throws IOException {
+        if( off < 0 || len < 0 || len > b.length - off )
+            throw new IndexOutOfBoundsException();
+
+        checkFailure();
+        while( len > 0 ) {
+            prepareBuffer();
+            final int n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes all the remaining bytes of the given buffer into the uploader buffer.
+     *
+     * @param src The buffer holding the data to be written
+     * @throws IOException
+     */
+    public void write (ByteBuffer src) throws IOException {
+        checkFailure();
+        while( src.hasRemaining() ) {
+            prepareBuffer();
+            final int n = Math.min(src.remaining(), buf.remaining());
+            final ByteBuffer slice = src.duplicate();
+            slice.limit(slice.position() + n);
+            buf.put(slice);
+            src.position(src.position() + n);
+        }
+    }
+
+    /**
+     * Makes sure there's room for at least one byte in the current buffer,
+     * adding a new buffer to the current part until it reaches the part size
+     * or uploading the part when it is complete
+     */
+    private void prepareBuffer() throws IOException {
         if( buf == null ) {
             buf = allocate();
-            md5 = createMd5();
         }
         else if( !buf.hasRemaining() ) {
-            if( buf.position() < chunkSize ) {
-                buf = expandBuffer(buf);
+            final int partSize = partSize(chunkSize, partsCount+1);
+            long size = buf.position();
+            for( ByteBuffer it : segments )
+                size += it.position();
+
+            if( size < partSize ) {
+                // keep the filled buffer and continue with a new one, so that no data is copied
+                segments.add(buf);
+                buf = ByteBuffer.allocate((int) Math.min(buf.capacity() * 2L, partSize - size));
             }
             else {
                 flush();
                 // create a new buffer
                 buf = allocate();
-                md5 = createMd5();
             }
         }
-
-        buf.put((byte) b);
-        // update the md5 checksum
-        md5.update((byte) b);
     }
 
     /**
@@ -263,48 +434,78 @@ public final class S3OutputStream extends OutputStream {
      */
     @Override
     public void flush() throws IOException {
-        // send out the current current
-        uploadBuffer(buf);
+        checkFailure();
+        // send out the current part
+        uploadBuffer(currentPart());
         // clear the current buffer
         buf = null;
-        md5 = null;
+        segments = new ArrayList<>();
+    }
+
+    /**
+     * @return The buffers holding the data of the current part
+     */
+    private List<ByteBuffer> currentPart() {
+        final List<ByteBuffer> result = new ArrayList<>(segments);
+        if( buf != null )
+            result.add(buf);
+        return result;
     }
 
-    private ByteBuffer allocate() {
+    private ByteBuffer allocate() throws IOException {
 
+        final int partSize = partSize(chunkSize, partsCount+1);
+
+        // the first part grows on demand, to not waste memory for small objects
         if( partsCount==0 ) {
-            return ByteBuffer.allocate(10 * 1024);
+            return ByteBuffer.allocate(Math.min(10 * 1024, partSize));
         }
 
-        // try to reuse a buffer from the poll
-        ByteBuffer result = bufferPool.poll();
-        if( result != null ) {
-            result.clear();
-        }
-        else {
-            // allocate a new buffer
-            result = ByteBuffer.allocateDirect(request.getChunkSize());
+        // when the memory budget is exhausted spill the part to the local disk, if allowed
+        if( request.getSpillDir() != null ) {
+            final ByteBuffer result = bufferPool.tryAcquire(partSize);
+            if( result != null )
+                return result;
+            if( spillFile == null )
+                spillFile = new SpillFile(request.getSpillDir());
+            log.trace("Upload buffer memory exhausted -- Spilling part {} of {} to {}", partsCount+1, objectId, spillFile.getFile());
+            return spillFile.map(partSize);
         }
 
-        return result;
+        // get a buffer from the pool, waiting for one to be released when the memory budget is exhausted
+        try {
+            final ByteBuffer result = bufferPool.acquire(partSize, request.getBufferWait(), TimeUnit.MILLISECONDS);
+            if( result != null )
+                return result;
+            // the buffers may be held by other streams written by this same thread, thus do not wait forever
+            log.debug("Upload buffer memory exhausted after waiting {} ms -- Using a heap buffer for part {} of {}", request.getBufferWait(), partsCount+1, objectId);
+            return ByteBuffer.allocate(partSize);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an upload buffer for Amazon S3 object " + objectId);
+        }
     }
 
 
     /**
-     * Upload the given buffer to S3 storage in a asynchronous manner.
+     * Upload the given part to S3 storage in a asynchronous manner.
      * NOTE: when the executor service is busy (i.e. there are any more free threads)
      * this method will block
      */
-    private void uploadBuffer(ByteBuffer buf) throws IOException {
-        // when the buffer is empty nothing to do
-        if( buf == null || buf.position()==0 ) { return; }
+    private void uploadBuffer(List<ByteBuffer> part) throws IOException {
+        // when the part is empty nothing to do
+        if( length(flip(part)) == 0 ) {
+            release(part);
+            return;
+        }
 
         if (partsCount == 0) {
             init();
         }
 
         // set the buffer in read mode and submit for upload
-        executor.submit( task(buf, md5.digest(), ++partsCount) );
+        executor.submit( task(part, ++partsCount) );
     }
 
     /**
@@ -331,23 +532,30 @@ public final class S3OutputStream extends OutputStream {
      * Creates a {@link Runnable} task to handle the upload process
      * in background
      *
-     * @param buffer The buffer to be uploaded
+     * The part MD5 checksum is computed by the task as well, so that the writer
+     * thread only has to copy the data into the buffers
+     *
+     * @param part The buffers to be uploaded, in read mode
      * @param partIndex The index count
      * @return
      */
-    private Runnable task(final ByteBuffer buffer, final byte[] checksum, final int partIndex) {
+    private Runnable task(final List<ByteBuffer> part, final int partIndex) {
 
         phaser.register();
         return new Runnable() {
             @Override
             public void run() {
                 try {
-                    uploadPart(buffer, checksum, partIndex, false);
+                    uploadPart(part, checksum(part), partIndex, false);
                 }
-                catch (IOException e) {
+                catch (IOException | RuntimeException e) {
                     final StringWriter writer = new StringWriter();
                     e.printStackTrace(new PrintWriter(writer));
                     log.error("Upload: {} > Error for part: {}\nCaused by: {}", uploadId, partIndex, writer.toString());
+                    // keep the first error to report it to the writer
+                    if( failure == null )
+                        failure = e instanceof IOException ? (IOException) e : new IOException("Failed to upload multipart data to Amazon S3", e);
+                    abortMultipartUpload();
                 }
                 finally {
                     phaser.arriveAndDeregister();
@@ -364,30 +572,103 @@ public final class S3OutputStream extends OutputStream {
      */
     @Override
     public void close() throws IOException {
+        final Future<Void> pending;
+        synchronized (this) {
+            pending = closeFuture;
+        }
+        // the stream is being closed asynchronously, just wait for it
+        if( pending != null ) {
+            await(pending);
+            return;
+        }
+
+        close0();
+    }
+
+    /**
+     * Close the stream in background, uploading any remaining buffered data and completing
+     * the upload without blocking the caller. No data can be written after invoking this method.
+     * <p>
+     * The close operation runs on a dedicated executor, not on the upload one, so that it can wait
+     * for the parts upload without starving the upload threads. Use {@link #awaitPendingUploads()}
+     * to wait for the completion of all the streams closed in this way.
+     *
+     * @return A {@link Future} which completes when the object has been stored, its {@link Future#get()}
+     *      method throws a {@link ExecutionException} wrapping the {@link IOException} when the upload fails
+     */
+    public synchronized Future<Void> closeAsync() {
+        if( closeFuture == null ) {
+            final CloseTask task = new CloseTask(this);
+            closeFuture = task;
+            if( closed ) {
+                task.run();
+            }
+            else {
+                pendingCloses.add(task);
+                getOrCreateCloseExecutor().execute(task);
+            }
+        }
+        return closeFuture;
+    }
+
+    /**
+     * Close the stream uploading any remaining buffered data
+     *
+     * @throws IOException
+     */
+    private void close0() throws IOException {
         if (closed) {
             return;
         }
 
         if (uploadId == null) {
-            if( buf != null )
-                putObject(buf, md5.digest());
-            else
-                // this is needed when trying to upload an empty 
-                putObject(new ByteArrayInputStream(new byte[]{}), 0, createMd5().digest());
+            // note: an empty object is uploaded as well when nothing has been written
+            final List<ByteBuffer> part = flip(currentPart());
+            putObject(toInputStream(part), length(part), checksum(part));
+            release(part);
         }
         else {
-            // -- upload remaining chunk
-            if( buf != null )
-                uploadBuffer(buf);
-
-            // -- shutdown upload executor and await termination
-            phaser.arriveAndAwaitAdvance();
+            try {
+                // -- upload remaining chunk, unless the upload has already failed
+                if( failure == null )
+                    uploadBuffer(currentPart());
+                else
+                    release(currentPart());
+
+                // -- shutdown upload executor and await termination
+                phaser.arriveAndAwaitAdvance();
+
+                // -- report the upload failure, if any
+                if( failure != null ) {
+                    closed = true;
+                    checkFailure();
+                }
 
-            // -- complete upload process
-            completeMultipartUpload();
+                // -- complete upload process
+                completeMultipartUpload();
+            }
+            finally {
+                // -- delete the spilled parts, if any
+                if( spillFile != null ) {
+                    spillFile.close();
+                    spillFile = null;
+                }
+            }
         }
 
         closed = true;
+        if( completionListener != null )
+            completionListener.run();
+    }
+
+    /**
+     * Set a callback invoked once the object has been successfully uploaded,
+     * either by {@link #close()} or by {@link #closeAsync()}
+     *
+     * @param listener The callback to invoke
+     */
+    public void setCompletionListener(Runnable listener) {
+        this.completionListener = listener;
     }
 
     /**
@@ -412,26 +693,30 @@ public final class S3OutputStream extends OutputStream {
     }
 
     /**
-     * Upload the given buffer to the S3 storage using a multipart process
+     * Upload the given part to the S3 storage using a multipart process
      *
-     * @param buf The buffer holding the data to upload
+     * @param part The buffers holding the data to upload, in read mode
      * @param partNumber The progressive index of this chunk (1-based)
      * @param lastPart {@code true} when it is the last chunk
      * @throws IOException
      */
-    private void uploadPart( final ByteBuffer buf, final byte[] checksum, final int partNumber, final boolean lastPart ) throws IOException {
-        buf.flip();
-        buf.mark();
+    private void uploadPart( final List<ByteBuffer> part, final byte[] checksum, final int partNumber, final boolean lastPart ) throws IOException {
+
+        // the offset of the part in the spill file, if the part has been spilled to disk
+        final Long spillOffset = spillFile != null && part.size() == 1 ? spillFile.offsetOf(part.get(0)) : null;
+        final long len = length(part);
 
         int attempt=0;
         boolean success=false;
         try {
             while( !success ) {
                 attempt++;
-                int len = buf.limit();
                 try {
                     log.trace("Uploading part {} with length {} attempt {} for {} ", partNumber, len, attempt, objectId);
-                    uploadPart( new ByteBufferInputStream(buf), len, checksum , partNumber, lastPart );
+                    final UploadPartRequest request = spillOffset != null
+                            ? new UploadPartRequest().withFile(spillFile.getFile()).withFileOffset(spillOffset)
+                            : new UploadPartRequest().withInputStream(toInputStream(part));
+                    uploadPart( request, len, checksum , partNumber, lastPart );
                     success=true;
                 }
                 catch (AmazonClientException | IOException e) {
@@ -440,32 +725,25 @@ public final class S3OutputStream extends OutputStream {
 
                     log.debug("Failed to upload part {} attempt {} for {} -- Caused by: {}", partNumber, attempt, objectId, e.getMessage());
                     sleep(request.getRetrySleep());
-                    buf.reset();
                 }
             }
         }
         finally {
-            if (!success) {
-                closed = true;
-                abortMultipartUpload();
-            }
-            bufferPool.offer(buf);
+            release(part);
         }
 
     }
 
-    private void uploadPart(final InputStream content, final long contentLength, final byte[] checksum, final int partNumber, final boolean lastPart)
+    private void uploadPart(final UploadPartRequest request, final long contentLength, final byte[] checksum, final int partNumber, final boolean lastPart)
             throws IOException {
 
         if (aborted) return;
 
-        final UploadPartRequest request = new UploadPartRequest();
         request.setBucketName(objectId.getBucket());
         request.setKey(objectId.getKey());
         request.setUploadId(uploadId);
         request.setPartNumber(partNumber);
         request.setPartSize(contentLength);
-        request.setInputStream(content);
         request.setLastPart(lastPart);
         request.setMd5Digest(Base64.encodeAsString(checksum));
 
@@ -498,7 +776,33 @@ public final class S3OutputStream extends OutputStream {
             log.warn("Failed to abort multipart upload {}: {}", uploadId, e.getMessage());
         }
         aborted = true;
-        phaser.arriveAndDeregister();
+    }
+
+    /**
+     * Returns the given buffers to the spill file or to the buffer pool it was obtained from.
+     * The buffers of the ramp-up parts, smaller than the chunk size, are used once per stream
+     * thus they are discarded instead of being recycled
+     */
+    private void release(List<ByteBuffer> part) {
+        for( ByteBuffer buffer : part ) {
+            if( spillFile != null && spillFile.offsetOf(buffer) != null )
+                spillFile.release(buffer);
+            else if( buffer.capacity() < chunkSize )
+                bufferPool.discard(buffer);
+            else
+                bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Throws an {@link IOException} when the upload of a part failed, so that the
+     * writer does not produce data that would be discarded
+     *
+     * @throws IOException
+     */
+    private void checkFailure() throws IOException {
+        if( failure != null )
+            throw new IOException(String.format("Upload of Amazon S3 object %s has been aborted -- Cause: %s", objectId, failure.getMessage()), failure);
     }
 
     /**
@@ -525,16 +829,6 @@ public final class S3OutputStream extends OutputStream {
         partETags = null;
     }
 
-    /**
-     * Stores the given buffer using a single-part upload process
-     * @param buf
-     * @throws IOException
-     */
-    private void putObject(ByteBuffer buf, byte[] checksum) throws IOException {
-        buf.flip();
-        putObject(new ByteBufferInputStream(buf), buf.limit(), checksum);
-    }
-
     /**
      * Stores the given buffer using a single-part upload process
      *
@@ -561,6 +855,104 @@ public final class S3OutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Close operation submitted by {@link #closeAsync()}, removed from the pending ones once completed.
+     * A failed close is kept in the failed ones until it is either observed through {@link #get()}
+     * or reported by {@link #awaitPendingUploads()}.
+     * <p>
+     * The task does not reference the stream once completed, since the callable is released by
+     * {@link FutureTask}, so that a failed task waiting to be reported does not retain the stream.
+     */
+    private static class CloseTask extends FutureTask<Void> {
+
+        CloseTask(final S3OutputStream stream) {
+            super(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    stream.close0();
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // added before the failure is visible to the callers of get(), so that it cannot be missed
+            if( failedCloses.size() < MAX_FAILED_CLOSES )
+                failedCloses.add(this);
+            else
+                log.warn("Too many asynchronous upload failures not yet reported -- Discarding: {}", t.toString());
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            pendingCloses.remove(this);
+        }
+
+        @Override
+        public Void get() throws InterruptedException, ExecutionException {
+            try {
+                return super.get();
+            }
+            catch (ExecutionException e) {
+                // the failure has been seen by the caller, it must not be reported again
+                failedCloses.remove(this);
+                throw e;
+            }
+        }
+
+        @Override
+        public Void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                return super.get(timeout, unit);
+            }
+            catch (ExecutionException e) {
+                failedCloses.remove(this);
+                throw e;
+            }
+        }
+
+        /**
+         * Wait for the task completion, without reporting its failure
+         */
+        void awaitDone() throws InterruptedIOException {
+            try {
+                super.get();
+            }
+            catch (ExecutionException | CancellationException e) {
+                // reported by the caller through the failed closes
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for Amazon S3 upload completion");
+            }
+        }
+    }
+
+    /**
+     * Wait for the given close operation to complete
+     */
+    private static void await(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if( cause instanceof IOException )
+                throw (IOException) cause;
+            if( cause instanceof RuntimeException )
+                throw (RuntimeException) cause;
+            if( cause instanceof Error )
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Amazon S3 upload completion");
+        }
+    }
+
     /**
      * @return Number of uploaded chunks
      */
@@ -596,12 +988,97 @@ public final class S3OutputStream extends OutputStream {
         return executorSingleton;
     }
 
+    /** holds a singleton buffer pool instance */
+    static private volatile ByteBufferPool bufferPoolSingleton;
+
+    /**
+     * Creates a singleton buffer pool instance.
+     *
+     * @param budget
+     *          The max amount of memory (bytes) used by the upload buffers of all streams,
+     *          zero for unbounded.
+     *          NOTE: changing the budget parameter after the first invocation has no effect.
+     * @return The buffer pool instance
+     */
+    static synchronized ByteBufferPool getOrCreateBufferPool(long budget) {
+        if( bufferPoolSingleton == null ) {
+            bufferPoolSingleton = new ByteBufferPool(budget);
+            log.trace("Created singleton upload buffer pool -- budget: {}", budget);
+        }
+        return bufferPoolSingleton;
+    }
+
+    /** the close operations submitted by {@link #closeAsync()} not yet completed */
+    static private final Set<CloseTask> pendingCloses = Collections.newSetFromMap(new ConcurrentHashMap<CloseTask, Boolean>());
+
+    /** max number of failed close operations kept until they are reported */
+    static private final int MAX_FAILED_CLOSES = 1000;
+
+    /** the close operations submitted by {@link #closeAsync()} failed and not yet reported */
+    static private final Queue<CloseTask> failedCloses = new ConcurrentLinkedQueue<>();
+
+    /** holds a singleton executor instance running the asynchronous close operations */
+    static private volatile ExecutorService closeExecutorSingleton;
+
+    static synchronized ExecutorService getOrCreateCloseExecutor() {
+        if( closeExecutorSingleton == null ) {
+            closeExecutorSingleton = Executors.newCachedThreadPool();
+            log.trace("Created singleton upload close executor");
+        }
+        return closeExecutorSingleton;
+    }
+
+    /**
+     * Wait for the completion of all the streams closed by {@link #closeAsync()}. The failures
+     * are reported once, including the ones of the streams whose close failed before invoking this method,
+     * unless they have already been observed through the {@link Future} returned by {@link #closeAsync()}
+     *
+     * @throws IOException When one or more uploads failed, any other failure is added as suppressed exception
+     */
+    public static void awaitPendingUploads() throws IOException {
+        for( CloseTask it : new ArrayList<>(pendingCloses) ) {
+            // a failure is reported below, since the failed task is in the failed closes
+            it.awaitDone();
+        }
+
+        IOException failure = null;
+        CloseTask it;
+        while( (it = failedCloses.poll()) != null ) {
+            try {
+                await(it);
+            }
+            catch (InterruptedIOException e) {
+                throw e;
+            }
+            catch (IOException | RuntimeException e) {
+                if( failure == null )
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if( failure != null )
+            throw failure;
+    }
+
     /**
      * Shutdown the executor and clear the singleton
      */
     public static synchronized void shutdownExecutor() {
         log.trace("Uploader shutdown -- Executor: {}", executorSingleton);
 
+        // the pending close operations may still need to submit parts to upload
+        try {
+            awaitPendingUploads();
+        }
+        catch (IOException e) {
+            log.debug("Pending upload failed -- Cause: {}", e.getMessage());
+        }
+        if( closeExecutorSingleton != null ) {
+            closeExecutorSingleton.shutdown();
+            closeExecutorSingleton = null;
+        }
+
         if( executorSingleton != null ) {
             executorSingleton.shutdown();
             log.trace("Uploader await completion");
@@ -609,6 +1086,7 @@ public final class S3OutputStream extends OutputStream {
             executorSingleton = null;
             log.trace("Uploader shutdown completed");
         }
+        bufferPoolSingleton = null;
     }
 
     private static void awaitExecutorCompletion() {
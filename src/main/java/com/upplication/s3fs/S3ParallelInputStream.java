@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.upplication.s3fs.util.S3DownloadOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parallel S3 downloader. Splits the object in ranged GET requests which
+ * are fetched ahead of the reader in background and returned in order.
+ * <p>
+ * The number of chunks fetched ahead is bounded by {@link S3DownloadOptions#getPrefetchCount()}
+ * so that the memory used by a stream never exceeds the configured buffer max size.
+ */
+public final class S3ParallelInputStream extends InputStream {
+
+    private static final Logger log = LoggerFactory.getLogger(S3ParallelInputStream.class);
+
+    /**
+     * The S3 client used to fetch the object chunks
+     */
+    private final AmazonS3Client client;
+
+    /**
+     * ID of the S3 object to read
+     */
+    private final S3ObjectId objectId;
+
+    /**
+     * The overall object size in bytes
+     */
+    private final long length;
+
+    /**
+     * The object ETag, used to make sure the object does not change while downloading it
+     */
+    private final String etag;
+
+    private final S3DownloadOptions opts;
+
+    private final ExecutorService executor;
+
+    /**
+     * The chunks fetched ahead, in the same order they have to be returned
+     */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /**
+     * The chunk currently consumed by the reader
+     */
+    private InputStream current;
+
+    /**
+     * The offset of the next chunk to be requested
+     */
+    private long nextOffset;
+
+    private boolean closed;
+
+    /**
+     * Creates a parallel input stream
+     *
+     * @param client The S3 client
+     * @param objectId The S3 object ID to download
+     * @param firstChunk The {@link S3Object} returned by a ranged GET request for the
+     *      first chunk of the object. Its content is returned as it is, while the
+     *      remaining chunks are fetched in background
+     * @param opts The download options
+     */
+    public S3ParallelInputStream(AmazonS3Client client, S3ObjectId objectId, S3Object firstChunk, S3DownloadOptions opts) {
+        this.client = requireNonNull(client);
+        this.objectId = requireNonNull(objectId);
+        this.opts = requireNonNull(opts);
+        this.length = firstChunk.getObjectMetadata().getInstanceLength();
+        this.etag = firstChunk.getObjectMetadata().getETag();
+        this.current = firstChunk.getObjectContent();
+        this.nextOffset = firstChunk.getObjectMetadata().getContentLength();
+        this.executor = getOrCreateExecutor(opts.getMaxThreads());
+
+        log.trace("Starting S3 download: {}; length: {}; chunk-size: {}; prefetch: {}", objectId, length, opts.getChunkSize(), opts.getPrefetchCount());
+        for( int i=0; i<opts.getPrefetchCount(); i++ )
+            schedule();
+    }
+
+    /**
+     * Submit the download of the next chunk, if any
+     */
+    private void schedule() {
+        if( nextOffset >= length )
+            return;
+
+        final long start = nextOffset;
+        final long end = Math.min(start + opts.getChunkSize(), length) - 1;
+        pending.add( executor.submit(task(start, end)) );
+        nextOffset = end + 1;
+    }
+
+    private Callable<byte[]> task(final long start, final long end) {
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return client.getObjectRange(objectId, start, end, etag, opts);
+            }
+        };
+    }
+
+    /**
+     * Move to the next chunk, waiting for it to be downloaded when required
+     *
+     * @return {@code true} if there is a chunk to read or {@code false} when the end of the object has been reached
+     * @throws IOException
+     */
+    private boolean advance() throws IOException {
+        if( current != null )
+            current.close();
+        current = null;
+
+        final Future<byte[]> next = pending.poll();
+        if( next == null )
+            return false;
+
+        try {
+            current = new ByteArrayInputStream(next.get());
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException)cause : new IOException("Failed to download data from Amazon S3 object " + objectId, cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Download interrupted for Amazon S3 object " + objectId);
+        }
+        // keep the pipeline full
+        schedule();
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkOpen();
+        while( current != null ) {
+            int b = current.read();
+            if( b != -1 )
+                return b;
+            advance();
+        }
+        return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        if( len == 0 )
+            return 0;
+
+        while( current != null ) {
+            int n = current.read(b, off, len);
+            if( n != -1 )
+                return n;
+            advance();
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current != null ? current.available() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( closed )
+            return;
+        closed = true;
+
+        for( Future<byte[]> it : pending )
+            it.cancel(true);
+        pending.clear();
+
+        if( current != null ) {
+            current.close();
+            current = null;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if( closed )
+            throw new IOException("Stream closed");
+    }
+
+    /** holds a singleton executor instance */
+    static private volatile ExecutorService executorSingleton;
+
+    /**
+     * Creates a singleton executor instance.
+     *
+     * @param maxThreads
+     *          The max number of allowed threads in the executor pool.
+     *          NOTE: changing the size parameter after the first invocation has no effect.
+     * @return The executor instance
+     */
+    static synchronized ExecutorService getOrCreateExecutor(int maxThreads) {
+        if( executorSingleton == null ) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    maxThreads,
+                    maxThreads,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>() );
+
+            pool.allowCoreThreadTimeOut(true);
+            executorSingleton = pool;
+            log.trace("Created singleton download executor -- max-treads: {}", maxThreads);
+        }
+        return executorSingleton;
+    }
+
+    /**
+     * Shutdown the executor and clear the singleton
+     */
+    public static synchronized void shutdownExecutor() {
+        log.trace("Downloader shutdown -- Executor: {}", executorSingleton);
+
+        if( executorSingleton != null ) {
+            executorSingleton.shutdownNow();
+            executorSingleton = null;
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.DirectoryIteratorException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.S3ListOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lists the objects matching a {@link ListObjectsV2Request} returning the result pages
+ * in lexicographical order.
+ * <p>
+ * The first page is listed as usual. When it is truncated the rest of the key space is
+ * split in ranges, using as boundaries the siblings of the keys found in the first page,
+ * and each range is listed concurrently by a different thread starting from the range
+ * lower boundary as {@code start-after} key. The pages are returned range by range, so that the order
+ * is the same of a sequential listing.
+ * <p>
+ * When the key space cannot be split, the next page is fetched in background while
+ * the caller consumes the current one.
+ */
+public final class S3ParallelLister implements Iterator<ListObjectsV2Result>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(S3ParallelLister.class);
+
+    /**
+     * The characters used to split the key space, in ascending order
+     */
+    static final String ALPHABET = "-.0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Time (milliseconds) a shard waits for room in its queue before checking if the lister is still in use
+     */
+    static final long OFFER_TIMEOUT_MILLIS = 500;
+
+    private final AmazonS3Client client;
+
+    private final ListObjectsV2Request request;
+
+    private final S3ListOptions opts;
+
+    /**
+     * The next page to return, {@code null} when it has not been fetched yet
+     */
+    private ListObjectsV2Result lookahead;
+
+    private boolean started;
+
+    private volatile boolean done;
+
+    /**
+     * The next page being fetched in background when listing sequentially
+     */
+    private Future<ListObjectsV2Result> next;
+
+    /**
+     * The key ranges listed concurrently, in ascending order
+     */
+    private List<Shard> shards = Collections.emptyList();
+
+    /**
+     * Index of the shard whose pages are currently returned
+     */
+    private int current;
+
+    /**
+     * Creates a lister
+     *
+     * @param client The S3 client
+     * @param request The listing request. The {@code start-after} key, when specified, is used as the start point
+     * @param opts The listing options
+     */
+    public S3ParallelLister(AmazonS3Client client, ListObjectsV2Request request, S3ListOptions opts) {
+        this.client = requireNonNull(client);
+        this.request = requireNonNull(request);
+        this.opts = requireNonNull(opts);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if( lookahead == null && !done ) {
+            lookahead = fetch();
+            done = lookahead == null;
+        }
+        return lookahead != null;
+    }
+
+    @Override
+    public ListObjectsV2Result next() {
+        if( !hasNext() )
+            throw new NoSuchElementException();
+        final ListObjectsV2Result result = lookahead;
+        lookahead = null;
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops the background listing, if any
+     */
+    @Override
+    public void close() {
+        done = true;
+        lookahead = null;
+        if( next != null ) {
+            next.cancel(true);
+            next = null;
+        }
+        for( Shard shard : shards )
+            shard.future.cancel(true);
+    }
+
+    private ListObjectsV2Result fetch() {
+        if( !started ) {
+            started = true;
+            final ListObjectsV2Result first = client.listObjectsV2(request);
+            schedule(first, true);
+            return first;
+        }
+
+        if( next != null ) {
+            final ListObjectsV2Result page = await(next);
+            next = null;
+            schedule(page, false);
+            return page;
+        }
+
+        while( current < shards.size() ) {
+            final Page page = take(shards.get(current));
+            if( page.error != null )
+                throw rethrow(page.error);
+            if( page.listing != null )
+                return page.listing;
+            // the shard is completed, move to the next one
+            current++;
+        }
+        return null;
+    }
+
+    /**
+     * Starts the listing of the pages following the given one
+     */
+    private void schedule(final ListObjectsV2Result page, boolean first) {
+        if( !page.isTruncated() )
+            return;
+
+        if( first && opts.getMaxShards() > 1 ) {
+            final String marker = lastKey(page);
+            final List<String> bounds = boundaries(request.getPrefix(), request.getDelimiter(), firstKey(page), marker, opts.getMaxShards());
+            if( !bounds.isEmpty() ) {
+                startShards(marker, bounds);
+                return;
+            }
+        }
+
+        next = getOrCreateExecutor().submit(new Callable<ListObjectsV2Result>() {
+            @Override
+            public ListObjectsV2Result call() throws Exception {
+                return client.listObjectsV2(nextRequest(request, page));
+            }
+        });
+    }
+
+    private void startShards(String marker, List<String> bounds) {
+        log.trace("Listing s3://{}/{} in {} shards -- boundaries: {}", request.getBucketName(), request.getPrefix(), bounds.size()+1, bounds);
+        final List<Shard> result = new ArrayList<>(bounds.size()+1);
+        String lower = marker;
+        for( int i=0; i<=bounds.size(); i++ ) {
+            final String upper = i < bounds.size() ? bounds.get(i) : null;
+            final Shard shard = new Shard(this, lower, upper, opts.getPagesPerShard());
+            shard.future = getOrCreateExecutor().submit(shard);
+            result.add(shard);
+            lower = upper;
+        }
+        shards = result;
+    }
+
+    /**
+     * Computes the boundaries used to split the key space following the given marker.
+     * <p>
+     * The keys of a page usually share a common prefix, so the following keys are
+     * likely to be found under the siblings of the last character of that prefix
+     * e.g. when the page spans {@code file-0000} to {@code file-0999} the boundaries are
+     * {@code file-1}, {@code file-2}, etc. The sibling characters are taken in the same
+     * class (digits, upper case or lower case letters) of the last prefix character, when
+     * possible, since names sharing a prefix usually continue with the same class of characters.
+     *
+     * @param prefix The listing prefix
+     * @param delimiter The listing delimiter
+     * @param first The first key (or common prefix) of the listed page
+     * @param marker The last key (or common prefix) of the listed page
+     * @param maxShards The max number of ranges
+     * @return The list of boundaries in ascending order, empty when the key space cannot be split
+     */
+    static List<String> boundaries(String prefix, String delimiter, String first, String marker, int maxShards) {
+        final int base = prefix != null ? prefix.length() : 0;
+        if( maxShards < 2 || first == null || marker == null || marker.length() <= base )
+            return Collections.emptyList();
+
+        // find the position where the keys of the page start to differ
+        int p = base;
+        while( p < first.length() && p < marker.length() && first.charAt(p) == marker.charAt(p) )
+            p++;
+        // the siblings of the last common character, or of the first character after the prefix
+        final int pos = p > base ? p-1 : base;
+        final char pivot = marker.charAt(pos);
+
+        List<Character> candidates = siblings(pivot, true);
+        if( candidates.isEmpty() )
+            candidates = siblings(pivot, false);
+        if( candidates.isEmpty() )
+            return Collections.emptyList();
+
+        final String head = marker.substring(0, pos);
+        // a boundary must not fall inside a common prefix, otherwise it would be returned by two ranges
+        if( delimiter != null && !delimiter.isEmpty() && head.indexOf(delimiter, base) != -1 )
+            return Collections.emptyList();
+
+        final int count = Math.min(maxShards-1, candidates.size());
+        final List<String> result = new ArrayList<>(count);
+        for( int i=1; i<=count; i++ ) {
+            result.add(head + candidates.get(i * candidates.size() / (count+1)));
+        }
+        return result;
+    }
+
+    private static List<Character> siblings(char pivot, boolean sameClass) {
+        final List<Character> result = new ArrayList<>();
+        for( int i=0; i<ALPHABET.length(); i++ ) {
+            final char ch = ALPHABET.charAt(i);
+            if( ch > pivot && (!sameClass || charClass(ch) == charClass(pivot)) )
+                result.add(ch);
+        }
+        return result;
+    }
+
+    private static int charClass(char ch) {
+        if( ch >= '0' && ch <= '9' ) return 1;
+        if( ch >= 'A' && ch <= 'Z' ) return 2;
+        if( ch >= 'a' && ch <= 'z' ) return 3;
+        return 0;
+    }
+
+    private static String firstKey(ListObjectsV2Result page) {
+        final List<S3ObjectSummary> objects = page.getObjectSummaries();
+        final List<String> prefixes = page.getCommonPrefixes();
+        final String key = objects.isEmpty() ? null : objects.get(0).getKey();
+        final String dir = prefixes.isEmpty() ? null : prefixes.get(0);
+        if( key == null ) return dir;
+        if( dir == null ) return key;
+        return key.compareTo(dir) < 0 ? key : dir;
+    }
+
+    private static String lastKey(ListObjectsV2Result page) {
+        final List<S3ObjectSummary> objects = page.getObjectSummaries();
+        final List<String> prefixes = page.getCommonPrefixes();
+        final String key = objects.isEmpty() ? null : objects.get(objects.size()-1).getKey();
+        final String dir = prefixes.isEmpty() ? null : prefixes.get(prefixes.size()-1);
+        if( key == null ) return dir;
+        if( dir == null ) return key;
+        return key.compareTo(dir) > 0 ? key : dir;
+    }
+
+    /**
+     * @return A copy of the given page holding only the elements not greater than {@code upper}
+     */
+    private static ListObjectsV2Result clip(ListObjectsV2Result page, String upper) {
+        final ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(page.getBucketName());
+        result.setPrefix(page.getPrefix());
+        result.setStartAfter(page.getStartAfter());
+        result.setContinuationToken(page.getContinuationToken());
+        result.setDelimiter(page.getDelimiter());
+        result.setMaxKeys(page.getMaxKeys());
+        result.setEncodingType(page.getEncodingType());
+        for( S3ObjectSummary it : page.getObjectSummaries() ) {
+            if( it.getKey().compareTo(upper) <= 0 )
+                result.getObjectSummaries().add(it);
+        }
+        for( String it : page.getCommonPrefixes() ) {
+            if( it.compareTo(upper) <= 0 )
+                result.getCommonPrefixes().add(it);
+        }
+        result.setKeyCount(result.getObjectSummaries().size() + result.getCommonPrefixes().size());
+        return result;
+    }
+
+    private static ListObjectsV2Request copyRequest(ListObjectsV2Request request) {
+        final ListObjectsV2Request result = new ListObjectsV2Request();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        result.setDelimiter(request.getDelimiter());
+        result.setMaxKeys(request.getMaxKeys());
+        result.setEncodingType(request.getEncodingType());
+        result.setFetchOwner(request.isFetchOwner());
+        result.setRequesterPays(request.isRequesterPays());
+        return result;
+    }
+
+    /**
+     * @return The request listing the keys following the given {@code start-after} key
+     */
+    private static ListObjectsV2Request shardRequest(ListObjectsV2Request request, String startAfter) {
+        final ListObjectsV2Request result = copyRequest(request);
+        result.setStartAfter(startAfter);
+        return result;
+    }
+
+    /**
+     * @return The request listing the page following the given one
+     */
+    private static ListObjectsV2Request nextRequest(ListObjectsV2Request request, ListObjectsV2Result page) {
+        final ListObjectsV2Request result = copyRequest(request);
+        result.setContinuationToken(page.getNextContinuationToken());
+        return result;
+    }
+
+    private Page take(Shard shard) {
+        try {
+            return shard.queue.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw interrupted();
+        }
+    }
+
+    private ListObjectsV2Result await(Future<ListObjectsV2Result> future) {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw interrupted();
+        }
+    }
+
+    private RuntimeException rethrow(Throwable cause) {
+        if( cause instanceof RuntimeException )
+            return (RuntimeException) cause;
+        if( cause instanceof Error )
+            throw (Error) cause;
+        return new DirectoryIteratorException(new IOException("Unable to list Amazon S3 bucket: " + request.getBucketName() + " -- prefix: " + request.getPrefix(), cause));
+    }
+
+    private DirectoryIteratorException interrupted() {
+        return new DirectoryIteratorException(new InterruptedIOException("Interrupted while listing Amazon S3 bucket: " + request.getBucketName() + " -- prefix: " + request.getPrefix()));
+    }
+
+    /**
+     * A listing result, either a page, a failure or the end of a shard when both are {@code null}
+     */
+    private static class Page {
+        final ListObjectsV2Result listing;
+        final Throwable error;
+
+        Page(ListObjectsV2Result listing, Throwable error) {
+            this.listing = listing;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Lists the keys greater than {@code lower} and not greater than {@code upper}.
+     * <p>
+     * The shard does not hold a strong reference to its lister, so that a lister abandoned
+     * without being closed can be garbage collected. The shard stops waiting for room in
+     * its queue as soon as the lister is closed or collected, instead of blocking forever.
+     */
+    private static class Shard implements Callable<Void> {
+
+        final WeakReference<S3ParallelLister> owner;
+
+        final AmazonS3Client client;
+
+        final ListObjectsV2Request request;
+
+        final String lower;
+
+        final String upper;
+
+        final BlockingQueue<Page> queue;
+
+        Future<Void> future;
+
+        Shard(S3ParallelLister owner, String lower, String upper, int capacity) {
+            this.owner = new WeakReference<>(owner);
+            this.client = owner.client;
+            this.request = owner.request;
+            this.lower = lower;
+            this.upper = upper;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            try {
+                ListObjectsV2Result page = client.listObjectsV2(shardRequest(request, lower));
+                while( true ) {
+                    final String last = lastKey(page);
+                    final boolean beyond = upper != null && last != null && last.compareTo(upper) > 0;
+                    if( !put(new Page(beyond ? clip(page, upper) : page, null)) )
+                        return null;
+                    if( beyond || !page.isTruncated() )
+                        break;
+                    page = client.listObjectsV2(nextRequest(request, page));
+                }
+                put(new Page(null, null));
+            }
+            catch (InterruptedException e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                put(new Page(null, e));
+            }
+            return null;
+        }
+
+        /**
+         * Waits for room in the queue to add the given page
+         *
+         * @return {@code false} when the lister has been closed or is no longer reachable
+         */
+        private boolean put(Page page) throws InterruptedException {
+            while( !queue.offer(page, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS) ) {
+                final S3ParallelLister lister = owner.get();
+                if( lister == null || lister.done ) {
+                    log.trace("Listing of s3://{}/{} abandoned -- stopping shard after: {}", request.getBucketName(), request.getPrefix(), lower);
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** holds a singleton executor instance fetching the listing pages in background */
+    static private volatile ExecutorService executorSingleton;
+
+    static synchronized ExecutorService getOrCreateExecutor() {
+        if( executorSingleton == null ) {
+            // daemon threads, so that a pending listing does not prevent the JVM to exit
+            executorSingleton = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "s3-list");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorSingleton;
+    }
+
+    /**
+     * Shutdown the executor and clear the singleton
+     */
+    public static synchronized void shutdownExecutor() {
+        if( executorSingleton != null ) {
+            executorSingleton.shutdownNow();
+            executorSingleton = null;
+        }
+    }
+}
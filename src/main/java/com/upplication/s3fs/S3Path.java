@@ -86,7 +86,15 @@ public class S3Path implements Path {
 	 */
 	private S3FileSystem fileSystem;
 
-	private S3ObjectSummary objectSummary;
+	/**
+	 * the attributes found when listing the parent directory, if any
+	 */
+	private S3FileAttributes attributes;
+
+	/**
+	 * the time (milliseconds) when the attributes have been set
+	 */
+	private long attributesTime;
 
 	/**
 	 * path must be a string of the form "/{bucket}", "/{bucket}/{key}" or just
@@ -520,23 +528,43 @@ public class S3Path implements Path {
 	}
 
 	/**
-	 * This method returns the cached {@link S3ObjectSummary} instance if this path has been created
-	 * while iterating a directory structures by the {@link S3Iterator}.
+	 * This method returns the attributes of this path if it has been created while
+	 * iterating a directory structure by the {@link S3Iterator} or the {@link S3FileTreeWalker}.
 	 * <br>
-	 * After calling this method the cached object is reset, so any following method invocation will return {@code null}.
-	 * This is necessary to discard the object meta-data and force to reload file attributes when required.
+	 * The attributes are kept for the life of this path object, unless the path is modified
+	 * through the file system, however the file system provider only trusts them while the
+	 * attributes cache is enabled and for no longer than its ttl.
 	 *
-	 * @return The cached {@link S3ObjectSummary} for this path if any.
+	 * @return The {@link S3FileAttributes} of this path if any.
 	 */
-	public S3ObjectSummary fetchObjectSummary() {
-		S3ObjectSummary result = objectSummary;
-		objectSummary = null;
-		return result;
+	public S3FileAttributes getAttributes() {
+		return attributes;
+	}
+
+	/**
+	 * @return The time (milliseconds) elapsed since the attributes of this path have been set
+	 */
+	long getAttributesAge() {
+		return System.currentTimeMillis() - attributesTime;
 	}
 
 	// note: package scope to limit the access to this setter
-	void setObjectSummary(S3ObjectSummary objectSummary) {
-		this.objectSummary = objectSummary;
+	void setAttributes(S3FileAttributes attributes) {
+		this.attributes = attributes;
+		this.attributesTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * This method returns the {@link S3ObjectSummary} of this path if it has been recently
+	 * listed or looked up, as held by the file system attributes cache.
+	 *
+	 * @return The cached {@link S3ObjectSummary} for this path if any.
+	 * @deprecated The listed paths do not hold their summary anymore, use
+	 * {@link java.nio.file.Files#readAttributes(Path, Class, LinkOption...)} instead
+	 */
+	@Deprecated
+	public S3ObjectSummary fetchObjectSummary() {
+		return fileSystem.getSummaryCache().get(bucket, getKey());
 	}
 
 	// ~ helpers methods
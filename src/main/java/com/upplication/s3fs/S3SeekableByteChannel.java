@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.upplication.s3fs.util.S3DownloadOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Read-only {@link SeekableByteChannel} backed by S3 ranged GET requests.
+ * <p>
+ * The object is read lazily in blocks of {@link S3DownloadOptions#getBlockSize()} bytes,
+ * the most recently used blocks are kept in a small cache so that random access
+ * patterns (e.g. index lookups) do not download the same data again.
+ * <p>
+ * As a {@link java.nio.channels.FileChannel}, the channel is safe for use by multiple
+ * concurrent threads, the read operations are serialized.
+ */
+public final class S3SeekableByteChannel implements SeekableByteChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(S3SeekableByteChannel.class);
+
+    private final AmazonS3Client client;
+
+    private final S3ObjectId objectId;
+
+    private final long size;
+
+    /**
+     * The object ETag, used to make sure the object does not change while reading it
+     */
+    private final String etag;
+
+    private final S3DownloadOptions opts;
+
+    /**
+     * LRU cache of the downloaded blocks, indexed by the block number
+     */
+    private final Map<Long, byte[]> blocks;
+
+    private long position;
+
+    private volatile boolean open = true;
+
+    /**
+     * Creates a read-only channel
+     *
+     * @param client The S3 client
+     * @param objectId The S3 object ID to read
+     * @param size The object size in bytes
+     * @param etag The object ETag, or {@code null} to not check object modifications
+     * @param opts The download options
+     */
+    public S3SeekableByteChannel(AmazonS3Client client, S3ObjectId objectId, long size, String etag, S3DownloadOptions opts) {
+        this.client = requireNonNull(client);
+        this.objectId = requireNonNull(objectId);
+        this.opts = requireNonNull(opts);
+        this.size = size;
+        this.etag = etag;
+
+        final int maxBlocks = opts.getBlockCacheCount();
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        checkOpen();
+        if( position >= size )
+            return -1;
+
+        int count = 0;
+        while( dst.hasRemaining() && position < size ) {
+            final long index = position / opts.getBlockSize();
+            final byte[] block = getBlock(index);
+            final int offset = (int)(position - index * opts.getBlockSize());
+            final int len = Math.min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, len);
+            position += len;
+            count += len;
+        }
+        return count;
+    }
+
+    private synchronized byte[] getBlock(long index) throws IOException {
+        byte[] result = blocks.get(index);
+        if( result == null ) {
+            final long start = index * opts.getBlockSize();
+            final long end = Math.min(start + opts.getBlockSize(), size) - 1;
+            log.trace("Reading block {} of {}", index, objectId);
+            result = client.getObjectRange(objectId, start, end, etag, opts);
+            blocks.put(index, result);
+        }
+        return result;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if( newPosition < 0 )
+            throw new IllegalArgumentException("Channel position cannot be negative: " + newPosition);
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        open = false;
+        blocks.clear();
+    }
+
+    private void checkOpen() throws IOException {
+        if( !open )
+            throw new ClosedChannelException();
+    }
+}
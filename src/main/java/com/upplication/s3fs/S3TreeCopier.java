@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.upplication.s3fs.util.S3ListOptions;
+import com.upplication.s3fs.util.S3MultipartOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Copies objects with server-side copy requests, so that the data does not transit
+ * through the client.
+ * <p>
+ * The objects of a directory are listed with a single flat listing and copied in parallel,
+ * with a bounded number of copies in flight.
+ */
+class S3TreeCopier {
+
+    private static final Logger log = LoggerFactory.getLogger(S3TreeCopier.class);
+
+    private final AmazonS3Client client;
+
+    private final S3ListOptions listOpts;
+
+    private final S3MultipartOptions<?> opts;
+
+    /**
+     * The storage class of the copied objects, {@code null} to keep the one of the source objects
+     */
+    private final StorageClass storageClass;
+
+    S3TreeCopier(AmazonS3Client client, S3ListOptions listOpts, S3MultipartOptions<?> opts, StorageClass storageClass) {
+        this.client = requireNonNull(client);
+        this.listOpts = requireNonNull(listOpts);
+        this.opts = requireNonNull(opts);
+        this.storageClass = storageClass;
+    }
+
+    /**
+     * Copy a single object, using a multipart copy for the objects larger than the upload chunk size
+     *
+     * @param source The source object path
+     * @param target The target object path
+     */
+    void copyObject(S3Path source, S3Path target) {
+        copyObject(source, target, client.getObjectMetadata(source.getBucket(), source.getKey()));
+    }
+
+    /**
+     * Copy a single object whose metadata has already been fetched, so that
+     * the copy does not require any further request for the source object
+     *
+     * @param source The source object path
+     * @param target The target object path
+     * @param sourceObjMetadata The source object metadata
+     */
+    void copyObject(S3Path source, S3Path target, ObjectMetadata sourceObjMetadata) {
+        final long length = sourceObjMetadata.getContentLength();
+
+        if( length <= opts.getChunkSize() ) {
+            CopyObjectRequest copyObjRequest = new CopyObjectRequest(source.getBucket(), source.getKey(), target.getBucket(), target.getKey());
+            if( sourceObjMetadata.getSSEAlgorithm() != null ) {
+                // replacing the metadata drops the source ones, thus all of them are set again
+                copyObjRequest.setNewObjectMetadata(AmazonS3Client.copyMetadata(sourceObjMetadata));
+            }
+            // the storage class is not copied from the source object
+            final String targetStorageClass = storageClass != null ? storageClass.toString() : sourceObjMetadata.getStorageClass();
+            if( targetStorageClass != null )
+                copyObjRequest.setStorageClass(targetStorageClass);
+            client.copyObject(copyObjRequest);
+        }
+        else {
+            client.multipartCopyObject(source, target, sourceObjMetadata, storageClass, opts);
+        }
+    }
+
+    /**
+     * Copy all the objects of a directory to the target directory.
+     * <p>
+     * A failed copy does not stop the others, the failures are reported once
+     * all the copies have completed.
+     *
+     * @param source The source directory
+     * @param target The target directory
+     * @throws IOException When one or more objects cannot be copied
+     */
+    void copyDirectory(S3Path source, S3Path target) throws IOException {
+        copyTree(source, target, false);
+    }
+
+    /**
+     * Move all the objects of a directory to the target directory. Each source object is
+     * deleted, in batches, as soon as it has been copied.
+     * <p>
+     * The objects that cannot be copied are left in the source directory, the objects
+     * already moved are not restored.
+     *
+     * @param source The source directory
+     * @param target The target directory
+     * @throws IOException When one or more objects cannot be copied or deleted
+     */
+    void moveDirectory(S3Path source, S3Path target) throws IOException {
+        copyTree(source, target, true);
+    }
+
+    private void copyTree(S3Path source, S3Path target, boolean move) throws IOException {
+        final String sourcePrefix = prefix(source);
+        final String targetPrefix = prefix(target);
+        if( source.getBucket().equals(target.getBucket()) && targetPrefix.startsWith(sourcePrefix) )
+            throw new IOException("Cannot copy directory " + source + " into itself: " + target);
+
+        final ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(source.getBucket())
+                .withPrefix(sourcePrefix)
+                .withMaxKeys(listOpts.getPageSize())
+                .withFetchOwner(false);
+
+        final int maxInFlight = opts.getMaxThreads() * 2;
+        final ExecutorService executor = getOrCreateExecutor(opts.getMaxThreads());
+        final S3BatchDeleter deleter = move
+                ? new S3BatchDeleter(client, source.getBucket(), S3BatchDeleter.getOrCreateExecutor(), S3BatchDeleter.MAX_THREADS)
+                : null;
+        final Deque<Future<String>> pending = new ArrayDeque<>();
+        final Failures failures = new Failures();
+        long count = 0;
+        try( S3ParallelLister lister = new S3ParallelLister(client, request, listOpts) ) {
+            while( lister.hasNext() ) {
+                for( S3ObjectSummary summary : lister.next().getObjectSummaries() ) {
+                    if( pending.size() >= maxInFlight )
+                        completed(pending.poll(), deleter, failures);
+                    final String targetKey = targetPrefix + summary.getKey().substring(sourcePrefix.length());
+                    pending.add(executor.submit(copyTask(source, summary.getKey(), target, targetKey)));
+                    count++;
+                }
+            }
+            while( !pending.isEmpty() )
+                completed(pending.poll(), deleter, failures);
+        }
+        finally {
+            for( Future<String> it : pending )
+                it.cancel(true);
+        }
+
+        if( deleter != null )
+            deleter.await();
+        if( failures.count > 0 ) {
+            final IOException result = new IOException(String.format("Failed to %s %d of %d objects from %s to %s", move ? "move" : "copy", failures.count, count, source, target));
+            for( Throwable it : failures.causes )
+                result.addSuppressed(it);
+            throw result;
+        }
+        log.trace("{} {} objects from {} to {}", move ? "Moved" : "Copied", count, source, target);
+    }
+
+    /**
+     * The copies failed, only the first causes are kept
+     */
+    private static class Failures {
+
+        static final int MAX_CAUSES = 10;
+
+        final List<Throwable> causes = new ArrayList<>();
+
+        int count;
+
+        void add(Throwable cause) {
+            if( causes.size() < MAX_CAUSES )
+                causes.add(cause);
+            count++;
+        }
+    }
+
+    /**
+     * Wait for the completion of a copy, the source key is deleted when moving
+     */
+    private static void completed(Future<String> future, S3BatchDeleter deleter, Failures failures) throws IOException {
+        final String key;
+        try {
+            key = future.get();
+        }
+        catch( ExecutionException e ) {
+            log.debug("Failed to copy Amazon S3 object -- Cause: {}", e.getCause().getMessage());
+            failures.add(e.getCause());
+            return;
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Amazon S3 copy completion");
+        }
+        if( deleter != null )
+            deleter.add(key);
+    }
+
+    /**
+     * @return A task copying an object and returning the source key
+     */
+    private Callable<String> copyTask(final S3Path source, final String sourceKey, final S3Path target, final String targetKey) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                if( sourceKey.endsWith("/") ) {
+                    // a directory object, it can't be represented by a path and it's empty
+                    client.copyObject(source.getBucket(), sourceKey, target.getBucket(), targetKey);
+                }
+                else {
+                    copyObject(child(source, sourceKey), child(target, targetKey));
+                }
+                return sourceKey;
+            }
+        };
+    }
+
+    private static S3Path child(S3Path dir, String key) {
+        return new S3Path(dir.getFileSystem(), "/" + dir.getBucket(), key);
+    }
+
+    private static String prefix(S3Path dir) {
+        final String key = dir.getKey();
+        return key.isEmpty() || key.endsWith("/") ? key : key + "/";
+    }
+
+    /** holds a singleton executor instance running the copies */
+    static private volatile ExecutorService executorSingleton;
+
+    /**
+     * Creates a singleton executor instance. It is distinct from the upload executor
+     * since a copy task can submit the parts of a multipart copy to the latter.
+     *
+     * @param maxThreads
+     *          The max number of allowed threads in the executor pool.
+     *          NOTE: changing the size parameter after the first invocation has no effect.
+     * @return The executor instance
+     */
+    static synchronized ExecutorService getOrCreateExecutor(int maxThreads) {
+        if( executorSingleton == null ) {
+            // daemon threads, so that a pending copy does not prevent the JVM to exit
+            executorSingleton = Executors.newFixedThreadPool(maxThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "s3-copy");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorSingleton;
+    }
+
+    /**
+     * Shutdown the executor and clear the singleton
+     */
+    public static synchronized void shutdownExecutor() {
+        if( executorSingleton != null ) {
+            executorSingleton.shutdownNow();
+            executorSingleton = null;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Write-only {@link SeekableByteChannel} streaming the data straight into
+ * an {@link S3OutputStream}, so that no local copy of the object is required.
+ * <p>
+ * Since the parts already uploaded cannot be modified, the channel only supports
+ * sequential writes: moving the position forward fills the gap with zeros, while
+ * moving it backward or truncating the written data is not allowed. Open the channel
+ * with the {@code READ} option as well when random access is needed.
+ */
+public final class S3WritableByteChannel implements SeekableByteChannel {
+
+    private static final int GAP_BUFFER_SIZE = 8 * 1024;
+
+    private final OutputStream out;
+
+    private final String path;
+
+    private byte[] transfer;
+
+    private long position;
+
+    private boolean open = true;
+
+    /**
+     * Creates a write-only channel
+     *
+     * @param out The stream where the data is written, usually a {@link S3OutputStream}
+     * @param path The target path, used to report errors
+     */
+    public S3WritableByteChannel(OutputStream out, String path) {
+        this.out = requireNonNull(out);
+        this.path = path;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkOpen();
+        final int len = src.remaining();
+        if( out instanceof S3OutputStream ) {
+            ((S3OutputStream) out).write(src);
+        }
+        else if( src.hasArray() ) {
+            out.write(src.array(), src.arrayOffset() + src.position(), len);
+            src.position(src.limit());
+        }
+        else {
+            if( transfer == null )
+                transfer = new byte[GAP_BUFFER_SIZE];
+            while( src.hasRemaining() ) {
+                final int n = Math.min(src.remaining(), transfer.length);
+                src.get(transfer, 0, n);
+                out.write(transfer, 0, n);
+            }
+        }
+        position += len;
+        return len;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        throw new NonReadableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        checkOpen();
+        if( newPosition < 0 )
+            throw new IllegalArgumentException("Channel position cannot be negative: " + newPosition);
+        if( newPosition < position )
+            throw new IOException(String.format("Cannot move backward the position of a sequential write channel: %s -- Open the channel with the READ option for random access", path));
+        if( newPosition > position )
+            fill(newPosition - position);
+        return this;
+    }
+
+    /**
+     * Writes the given number of zero bytes to fill the gap left by a forward seek
+     */
+    private void fill(long count) throws IOException {
+        final byte[] zeros = new byte[(int)Math.min(count, GAP_BUFFER_SIZE)];
+        while( count > 0 ) {
+            final int n = (int)Math.min(count, zeros.length);
+            out.write(zeros, 0, n);
+            position += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        checkOpen();
+        if( size < 0 )
+            throw new IllegalArgumentException("Channel size cannot be negative: " + size);
+        if( size < position )
+            throw new IOException(String.format("Cannot truncate a sequential write channel: %s -- Open the channel with the READ option for random access", path));
+        return this;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if( !open )
+            return;
+        open = false;
+        out.close();
+    }
+
+    private void checkOpen() throws IOException {
+        if( !open )
+            throw new ClosedChannelException();
+    }
+}
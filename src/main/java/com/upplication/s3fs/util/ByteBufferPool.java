@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of direct {@link ByteBuffer}s shared by many writers, bounded by a max amount of memory.
+ * <p>
+ * Released buffers are recycled by any writer asking for a buffer with the same capacity.
+ * When the budget is exhausted {@link #acquire(int)} blocks until another writer releases
+ * a buffer, giving backpressure to the writers. A buffer is always granted when no buffer
+ * is in use, so that a budget smaller than a single buffer cannot block forever.
+ * <p>
+ * Note that a writer keeps its current buffer until it is filled, thus a single thread writing
+ * to more streams than {@code budget / bufferCapacity} would wait for buffers only its own
+ * streams can release: use {@link #acquire(int, long, TimeUnit)} to not block forever.
+ * <p>
+ * The released buffers are kept for recycling up to a max amount of free memory, above it
+ * they are dropped and left to the garbage collector, so that an unbounded pool does not
+ * pin off-heap every buffer ever allocated.
+ */
+public class ByteBufferPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ByteBufferPool.class);
+
+    /**
+     * Max amount of memory (bytes) held by the free buffers of an unbounded pool
+     */
+    public static final long DEFAULT_MAX_FREE = 256L << 20;
+
+    /**
+     * Max amount of memory (bytes) allocated by the pool
+     */
+    private final long budget;
+
+    /**
+     * Max amount of memory (bytes) held by the free buffers
+     */
+    private final long maxFree;
+
+    /**
+     * The released buffers, indexed by capacity
+     */
+    private final Map<Integer, Deque<ByteBuffer>> free = new HashMap<>();
+
+    /**
+     * The buffers currently in use
+     */
+    private final Set<ByteBuffer> inUse = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    /**
+     * Amount of memory (bytes) held by the pool, both by the free buffers and by the ones in use
+     */
+    private long allocated;
+
+    /**
+     * Amount of memory (bytes) held by the free buffers
+     */
+    private long freeBytes;
+
+    /**
+     * Creates a buffer pool
+     *
+     * @param budget The max amount of memory (bytes) the pool can allocate, zero or a negative value for unbounded.
+     *      The free buffers are kept up to the budget, or up to {@link #DEFAULT_MAX_FREE} for an unbounded pool
+     */
+    public ByteBufferPool(long budget) {
+        this(budget, budget > 0 ? budget : DEFAULT_MAX_FREE);
+    }
+
+    /**
+     * Creates a buffer pool
+     *
+     * @param budget The max amount of memory (bytes) the pool can allocate, zero or a negative value for unbounded
+     * @param maxFree The max amount of memory (bytes) held by the free buffers
+     */
+    public ByteBufferPool(long budget, long maxFree) {
+        this.budget = budget > 0 ? budget : Long.MAX_VALUE;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Gets a buffer with the given capacity, waiting for some memory to be released when
+     * the budget is exhausted
+     *
+     * @param capacity The buffer capacity
+     * @return A cleared buffer
+     * @throws InterruptedException When the thread is interrupted while waiting
+     */
+    public synchronized ByteBuffer acquire(int capacity) throws InterruptedException {
+        ByteBuffer result;
+        while( (result = tryAcquire(capacity)) == null ) {
+            log.trace("Buffer pool exhausted -- budget: {}; allocated: {}; requested: {}", budget, allocated, capacity);
+            wait();
+        }
+        return result;
+    }
+
+    /**
+     * Gets a buffer with the given capacity, waiting at most the given time for some memory
+     * to be released when the budget is exhausted
+     *
+     * @param capacity The buffer capacity
+     * @param timeout The max time to wait
+     * @param unit The time unit of the timeout
+     * @return A cleared buffer or {@code null} when the budget is still exhausted after the timeout
+     * @throws InterruptedException When the thread is interrupted while waiting
+     */
+    public synchronized ByteBuffer acquire(int capacity, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        ByteBuffer result;
+        while( (result = tryAcquire(capacity)) == null ) {
+            final long remaining = deadline - System.nanoTime();
+            if( remaining <= 0 )
+                return null;
+            log.trace("Buffer pool exhausted -- budget: {}; allocated: {}; requested: {}", budget, allocated, capacity);
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result;
+    }
+
+    /**
+     * Gets a buffer with the given capacity when it can be done within the budget
+     *
+     * @param capacity The buffer capacity
+     * @return A cleared buffer or {@code null} when the budget is exhausted
+     */
+    public synchronized ByteBuffer tryAcquire(int capacity) {
+        ByteBuffer result = poll(capacity);
+        if( result == null ) {
+            // drop free buffers having a different capacity to make room for the new one
+            while( freeBytes > 0 && allocated + capacity > budget )
+                dropFree();
+
+            if( allocated + capacity > budget && !inUse.isEmpty() )
+                return null;
+
+            result = ByteBuffer.allocateDirect(capacity);
+            allocated += capacity;
+        }
+        inUse.add(result);
+        return result;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers not obtained from this pool are ignored
+     *
+     * @param buffer The buffer to release
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if( buffer == null || !inUse.remove(buffer) )
+            return;
+
+        if( freeBytes + buffer.capacity() > maxFree ) {
+            // too much memory is already free, leave this buffer to the garbage collector
+            allocated -= buffer.capacity();
+            notifyAll();
+            return;
+        }
+
+        Deque<ByteBuffer> queue = free.get(buffer.capacity());
+        if( queue == null ) {
+            queue = new ArrayDeque<>();
+            free.put(buffer.capacity(), queue);
+        }
+        queue.push(buffer);
+        freeBytes += buffer.capacity();
+        notifyAll();
+    }
+
+    /**
+     * Returns a buffer to the pool without recycling it, e.g. a buffer whose capacity is
+     * unlikely to be requested again. Buffers not obtained from this pool are ignored
+     *
+     * @param buffer The buffer to discard
+     */
+    public synchronized void discard(ByteBuffer buffer) {
+        if( buffer == null || !inUse.remove(buffer) )
+            return;
+
+        allocated -= buffer.capacity();
+        notifyAll();
+    }
+
+    private ByteBuffer poll(int capacity) {
+        final Deque<ByteBuffer> queue = free.get(capacity);
+        final ByteBuffer result = queue != null ? queue.poll() : null;
+        if( result != null ) {
+            freeBytes -= capacity;
+            result.clear();
+        }
+        return result;
+    }
+
+    private void dropFree() {
+        final Iterator<Deque<ByteBuffer>> itr = free.values().iterator();
+        while( itr.hasNext() ) {
+            final ByteBuffer buffer = itr.next().poll();
+            if( buffer != null ) {
+                freeBytes -= buffer.capacity();
+                allocated -= buffer.capacity();
+                return;
+            }
+            itr.remove();
+        }
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getMaxFree() {
+        return maxFree;
+    }
+
+    /**
+     * @return Amount of memory (bytes) held by the pool
+     */
+    public synchronized long getAllocated() {
+        return allocated;
+    }
+
+    /**
+     * @return Amount of memory (bytes) held by the buffers in use
+     */
+    public synchronized long getInUse() {
+        return allocated - freeBytes;
+    }
+}
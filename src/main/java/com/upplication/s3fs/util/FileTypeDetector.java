@@ -72,4 +72,14 @@ public class FileTypeDetector extends java.nio.file.spi.FileTypeDetector {
             return tika.detect(stream, path.getFileName().toString());
         }
     }
+
+    /**
+     * Detects the content type by the file name only, without reading the file content
+     *
+     * @param fileName The name of the file
+     * @return The detected content type
+     */
+    public String probeContentType(String fileName) {
+        return tika.detect(fileName);
+    }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model the options of a parallel ranged download
+ */
+public class S3DownloadOptions {
+
+    private static final Logger log = LoggerFactory.getLogger(S3DownloadOptions.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 10 << 20;
+
+    public static final long DEFAULT_BUFFER_MAX_SIZE = 100 << 20;
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 4 << 20;
+
+    /**
+     * Size of each ranged GET request
+     */
+    private int chunkSize;
+
+    /**
+     * Maximum number of threads allowed
+     */
+    private int maxThreads;
+
+    /**
+     * Size of the blocks read by a random access channel
+     */
+    private int blockSize;
+
+    /**
+     * Max amount of memory (bytes) a single random access channel can use to cache the blocks read
+     */
+    private long blockCacheSize;
+
+    /**
+     * Max amount of memory (bytes) a single stream can use to hold the chunks fetched ahead
+     */
+    private long bufferMaxSize;
+
+    /**
+     * Maximum number of attempts to download a chunk
+     */
+    private int maxAttempts;
+
+    /**
+     * Time (milliseconds) to wait after a failed download to retry a chunk download
+     */
+    private long retrySleep;
+
+    /**
+     * initialize default values
+     */
+    {
+        retrySleep = 500;
+        chunkSize = DEFAULT_CHUNK_SIZE;
+        blockSize = DEFAULT_BLOCK_SIZE;
+        blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+        bufferMaxSize = DEFAULT_BUFFER_MAX_SIZE;
+        maxAttempts = 5;
+        maxThreads = Runtime.getRuntime().availableProcessors() *3;
+    }
+
+    public S3DownloadOptions() {
+
+    }
+
+    public S3DownloadOptions(Properties props) {
+        setChunkSize(props.getProperty("download_chunk_size"));
+        setMaxThreads(props.getProperty("download_max_threads"));
+        setBlockSize(props.getProperty("download_block_size"));
+        setBlockCacheSize(props.getProperty("download_block_cache_size"));
+        setBufferMaxSize(props.getProperty("download_buffer_max_size"));
+        setMaxAttempts(props.getProperty("download_max_attempts"));
+        setRetrySleep(props.getProperty("download_retry_sleep"));
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    public long getBufferMaxSize() {
+        return bufferMaxSize;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getRetrySleep() {
+        return retrySleep;
+    }
+
+    /**
+     * @return The number of chunks that can be fetched ahead of the reader
+     *      without exceeding the buffer max size nor the number of threads
+     */
+    public int getPrefetchCount() {
+        long count = bufferMaxSize / chunkSize;
+        return (int) Math.max(1, Math.min(count, maxThreads));
+    }
+
+    /**
+     * @return The number of blocks a random access channel can keep in its cache
+     *      without exceeding the block cache size
+     */
+    public int getBlockCacheCount() {
+        return (int) Math.max(1, Math.min(blockCacheSize / blockSize, Integer.MAX_VALUE));
+    }
+
+    public S3DownloadOptions setChunkSize(int chunkSize) {
+        if( chunkSize <= 0 ) {
+            log.warn("Not a valid AWS S3 download chunk size: `{}` -- Using default", chunkSize);
+            return this;
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public S3DownloadOptions setChunkSize(String chunkSize) {
+        if( chunkSize==null )
+            return this;
+
+        try {
+            setChunkSize(Integer.parseInt(chunkSize));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download chunk size: `{}` -- Using default", chunkSize);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setMaxThreads(int maxThreads) {
+        if( maxThreads <= 0 ) {
+            log.warn("Not a valid AWS S3 download max threads: `{}` -- Using default", maxThreads);
+            return this;
+        }
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    public S3DownloadOptions setMaxThreads(String maxThreads) {
+        if( maxThreads==null )
+            return this;
+
+        try {
+            setMaxThreads(Integer.parseInt(maxThreads));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download max threads: `{}` -- Using default", maxThreads);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setBlockSize(int blockSize) {
+        if( blockSize <= 0 ) {
+            log.warn("Not a valid AWS S3 download block size: `{}` -- Using default", blockSize);
+            return this;
+        }
+        this.blockSize = blockSize;
+        return this;
+    }
+
+    public S3DownloadOptions setBlockSize(String blockSize) {
+        if( blockSize==null )
+            return this;
+
+        try {
+            setBlockSize(Integer.parseInt(blockSize));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download block size: `{}` -- Using default", blockSize);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setBlockCacheSize(long blockCacheSize) {
+        if( blockCacheSize <= 0 ) {
+            log.warn("Not a valid AWS S3 download block cache size: `{}` -- Using default", blockCacheSize);
+            return this;
+        }
+        this.blockCacheSize = blockCacheSize;
+        return this;
+    }
+
+    public S3DownloadOptions setBlockCacheSize(String blockCacheSize) {
+        if( blockCacheSize==null )
+            return this;
+
+        try {
+            setBlockCacheSize(Long.parseLong(blockCacheSize));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download block cache size: `{}` -- Using default", blockCacheSize);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setBufferMaxSize(long bufferMaxSize) {
+        if( bufferMaxSize <= 0 ) {
+            log.warn("Not a valid AWS S3 download buffer max size: `{}` -- Using default", bufferMaxSize);
+            return this;
+        }
+        this.bufferMaxSize = bufferMaxSize;
+        return this;
+    }
+
+    public S3DownloadOptions setBufferMaxSize(String bufferMaxSize) {
+        if( bufferMaxSize==null )
+            return this;
+
+        try {
+            setBufferMaxSize(Long.parseLong(bufferMaxSize));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download buffer max size: `{}` -- Using default", bufferMaxSize);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setMaxAttempts(int maxAttempts) {
+        if( maxAttempts <= 0 ) {
+            log.warn("Not a valid AWS S3 download max attempts value: `{}` -- Using default", maxAttempts);
+            return this;
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public S3DownloadOptions setMaxAttempts(String maxAttempts) {
+        if( maxAttempts == null )
+            return this;
+
+        try {
+            setMaxAttempts(Integer.parseInt(maxAttempts));
+        }
+        catch(NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download max attempts value: `{}` -- Using default", maxAttempts);
+        }
+        return this;
+    }
+
+    public S3DownloadOptions setRetrySleep(long retrySleep) {
+        if( retrySleep < 0 ) {
+            log.warn("Not a valid AWS S3 download retry sleep value: `{}` -- Using default", retrySleep);
+            return this;
+        }
+        this.retrySleep = retrySleep;
+        return this;
+    }
+
+    public S3DownloadOptions setRetrySleep( String retrySleep ) {
+        if( retrySleep == null )
+            return this;
+
+        try {
+            setRetrySleep(Long.parseLong(retrySleep));
+        }
+        catch (NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 download retry sleep value: `{}` -- Using default", retrySleep);
+        }
+        return this;
+    }
+
+    public long getRetrySleepWithAttempt( int attempt ) {
+        return retrySleep * ( 1 << (attempt-1) );
+    }
+
+    @Override
+    public String toString() {
+        return "chunkSize=" + chunkSize +
+                "; maxThreads=" + maxThreads +
+                "; blockSize=" + blockSize +
+                "; blockCacheSize=" + blockCacheSize +
+                "; bufferMaxSize=" + bufferMaxSize +
+                "; maxAttempts=" + maxAttempts +
+                "; retrySleep=" + retrySleep;
+    }
+
+}
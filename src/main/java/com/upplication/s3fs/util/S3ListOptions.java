@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Model the options of a (parallel) objects listing
+ */
+public class S3ListOptions {
+
+    private static final Logger log = LoggerFactory.getLogger(S3ListOptions.class);
+
+    public static final int DEFAULT_MAX_SHARDS = 8;
+
+    public static final int DEFAULT_PREFETCH_PAGES = 64;
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    /**
+     * Max number of key ranges listed concurrently, {@code 1} to list sequentially
+     */
+    private int maxShards;
+
+    /**
+     * Max number of pages fetched ahead of the reader, shared by all the shards
+     */
+    private int prefetchPages;
+
+    /**
+     * Max number of keys returned by each listing request
+     */
+    private int pageSize;
+
+    /**
+     * initialize default values
+     */
+    {
+        maxShards = DEFAULT_MAX_SHARDS;
+        prefetchPages = DEFAULT_PREFETCH_PAGES;
+        pageSize = DEFAULT_PAGE_SIZE;
+    }
+
+    public S3ListOptions() {
+
+    }
+
+    public S3ListOptions(Properties props) {
+        setMaxShards(props.getProperty("list_max_shards"));
+        setPrefetchPages(props.getProperty("list_prefetch_pages"));
+        setPageSize(props.getProperty("list_page_size"));
+    }
+
+    public int getMaxShards() {
+        return maxShards;
+    }
+
+    public int getPrefetchPages() {
+        return prefetchPages;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return The number of pages each shard can fetch ahead of the reader
+     */
+    public int getPagesPerShard() {
+        return Math.max(2, prefetchPages / Math.max(1, maxShards));
+    }
+
+    public S3ListOptions setMaxShards(int maxShards) {
+        this.maxShards = maxShards;
+        return this;
+    }
+
+    public S3ListOptions setMaxShards(String maxShards) {
+        if( maxShards==null )
+            return this;
+
+        try {
+            setMaxShards(Integer.parseInt(maxShards));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 list max shards: `{}` -- Using default", maxShards);
+        }
+        return this;
+    }
+
+    public S3ListOptions setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+        return this;
+    }
+
+    public S3ListOptions setPrefetchPages(String prefetchPages) {
+        if( prefetchPages==null )
+            return this;
+
+        try {
+            setPrefetchPages(Integer.parseInt(prefetchPages));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 list prefetch pages: `{}` -- Using default", prefetchPages);
+        }
+        return this;
+    }
+
+    public S3ListOptions setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+        return this;
+    }
+
+    public S3ListOptions setPageSize(String pageSize) {
+        if( pageSize==null )
+            return this;
+
+        try {
+            setPageSize(Integer.parseInt(pageSize));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 list page size: `{}` -- Using default", pageSize);
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "maxShards=" + maxShards +
+                "; prefetchPages=" + prefetchPages +
+                "; pageSize=" + pageSize;
+    }
+
+}
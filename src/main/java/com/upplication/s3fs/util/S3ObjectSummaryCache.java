@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the {@link S3ObjectSummary} of the paths looked up or listed in a file system,
+ * so that checking the existence or the attributes of the same path again does not
+ * require a new request.
+ * <p>
+ * The entries expire after a configurable time, and are invalidated by the operations
+ * modifying a path through the file system, together with the entries of its parent
+ * directories since they may be implicitly created or removed by the same operation.
+ * <p>
+ * The paths found not to exist are remembered as well, for a shorter time, so that probing
+ * again for a missing path (e.g. an optional output) does not repeat the lookup requests.
+ * <p>
+ * The cache is disabled by default: the changes made by other hosts are not seen until an
+ * entry expires, thus a path written elsewhere can report a stale size or last modified time
+ * for up to {@code attributes_cache_ttl} and can be reported as missing for up to
+ * {@code attributes_cache_missing_ttl}. Enable it by setting these options (milliseconds)
+ * when the file system paths are not modified concurrently by other hosts.
+ */
+public class S3ObjectSummaryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(S3ObjectSummaryCache.class);
+
+    public static final long DEFAULT_TTL = 0;
+
+    public static final long DEFAULT_MAX_SIZE = 50_000;
+
+    public static final long DEFAULT_MISSING_TTL = 0;
+
+    /**
+     * Time (milliseconds) an entry is kept after it has been added, {@code 0} to disable the cache
+     */
+    private long ttl = DEFAULT_TTL;
+
+    /**
+     * Max number of entries in the cache
+     */
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Time (milliseconds) a path not found is remembered, {@code 0} to not cache missing paths
+     */
+    private long missingTtl = DEFAULT_MISSING_TTL;
+
+    private final Cache<String, S3ObjectSummary> cache;
+
+    /**
+     * The paths not found, the value is not used
+     */
+    private final Cache<String, Boolean> missing;
+
+    public S3ObjectSummaryCache() {
+        this(new Properties());
+    }
+
+    public S3ObjectSummaryCache(Properties props) {
+        setTtl(props.getProperty("attributes_cache_ttl"));
+        setMaxSize(props.getProperty("attributes_cache_max_size"));
+        setMissingTtl(props.getProperty("attributes_cache_missing_ttl"));
+
+        cache = ttl > 0 && maxSize > 0
+                ? CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.MILLISECONDS).maximumSize(maxSize).<String, S3ObjectSummary>build()
+                : null;
+        missing = missingTtl > 0 && maxSize > 0
+                ? CacheBuilder.newBuilder().expireAfterWrite(missingTtl, TimeUnit.MILLISECONDS).maximumSize(maxSize).<String, Boolean>build()
+                : null;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getMissingTtl() {
+        return missingTtl;
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * @param bucket The bucket name
+     * @param key The object key, a key ending with a slash only matches a directory
+     * @return The cached summary for the given path or {@code null} if not available. The object
+     *      with the exact key is returned in place of a directory with the same name.
+     */
+    public S3ObjectSummary get(String bucket, String key) {
+        if( cache == null )
+            return null;
+
+        final String path = cacheKey(bucket, key);
+        final S3ObjectSummary summary = key.endsWith("/") ? null : cache.getIfPresent(path);
+        return summary != null ? summary : cache.getIfPresent(directoryKey(path));
+    }
+
+    /**
+     * Cache the summary of a path
+     *
+     * @param bucket The bucket name
+     * @param key The object key
+     * @param summary The summary describing the path, i.e. the object itself or any object in the directory
+     */
+    public void put(String bucket, String key, S3ObjectSummary summary) {
+        if( cache != null && summary != null ) {
+            // an object with the exact key is a file, otherwise the path is a directory
+            final boolean file = !key.endsWith("/") && key.equals(summary.getKey());
+            final String path = cacheKey(bucket, key);
+            cache.put(file ? path : directoryKey(path), summary);
+        }
+        if( missing != null )
+            missing.invalidate(cacheKey(bucket, key));
+    }
+
+    /**
+     * @param bucket The bucket name
+     * @param key The object key
+     * @return {@code true} when the path has been recently found not to exist
+     */
+    public boolean isMissing(String bucket, String key) {
+        return missing != null && missing.getIfPresent(cacheKey(bucket, key)) != null;
+    }
+
+    /**
+     * Remember a path not found
+     *
+     * @param bucket The bucket name
+     * @param key The object key
+     */
+    public void putMissing(String bucket, String key) {
+        if( missing != null )
+            missing.put(cacheKey(bucket, key), Boolean.TRUE);
+    }
+
+    /**
+     * Cache a directory found by a listing, e.g. a common prefix, for which
+     * there's no object summary
+     *
+     * @param bucket The bucket name
+     * @param key The directory key
+     */
+    public void putDirectory(String bucket, String key) {
+        if( cache == null )
+            return;
+
+        final S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName(bucket);
+        summary.setKey(key.endsWith("/") ? key : key + "/");
+        summary.setSize(0);
+        cache.put(directoryKey(cacheKey(bucket, key)), summary);
+        if( missing != null )
+            missing.invalidate(cacheKey(bucket, key));
+    }
+
+    /**
+     * Invalidate the entry of a path and of all its parent directories
+     *
+     * @param bucket The bucket name
+     * @param key The object key
+     */
+    public void invalidate(String bucket, String key) {
+        if( cache == null && missing == null )
+            return;
+
+        String path = cacheKey(bucket, key);
+        while( true ) {
+            if( cache != null ) {
+                cache.invalidate(path);
+                cache.invalidate(directoryKey(path));
+            }
+            if( missing != null )
+                missing.invalidate(path);
+            final int p = path.lastIndexOf('/');
+            if( p == -1 )
+                break;
+            path = path.substring(0, p);
+        }
+    }
+
+    /**
+     * Invalidate the entries of a directory and all its content, as well as its parent directories
+     *
+     * @param bucket The bucket name
+     * @param key The directory key
+     */
+    public void invalidateTree(String bucket, String key) {
+        invalidate(bucket, key);
+        if( cache == null )
+            return;
+
+        final String prefix = cacheKey(bucket, key) + '/';
+        final Iterator<String> it = cache.asMap().keySet().iterator();
+        while( it.hasNext() ) {
+            if( it.next().startsWith(prefix) )
+                it.remove();
+        }
+    }
+
+    /**
+     * Invalidate all the entries
+     */
+    public void invalidateAll() {
+        if( cache != null )
+            cache.invalidateAll();
+        if( missing != null )
+            missing.invalidateAll();
+    }
+
+    /**
+     * @return The key of a path in the cache, without the trailing slash, that
+     *      is also the key of the file object having the same name
+     */
+    private static String cacheKey(String bucket, String key) {
+        if( key.endsWith("/") )
+            key = key.substring(0, key.length()-1);
+        return key.isEmpty() ? bucket : bucket + '/' + key;
+    }
+
+    /**
+     * @return The key of a directory in the cache, kept apart from the file with the same name
+     *      since S3 can hold both an object {@code a/b} and a directory {@code a/b/}
+     */
+    private static String directoryKey(String cacheKey) {
+        return cacheKey + '/';
+    }
+
+    private void setTtl(String ttl) {
+        if( ttl == null )
+            return;
+
+        try {
+            this.ttl = Long.parseLong(ttl);
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 attributes cache ttl: `{}` -- Using default", ttl);
+        }
+    }
+
+    private void setMaxSize(String maxSize) {
+        if( maxSize == null )
+            return;
+
+        try {
+            this.maxSize = Long.parseLong(maxSize);
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 attributes cache max size: `{}` -- Using default", maxSize);
+        }
+    }
+
+    private void setMissingTtl(String ttl) {
+        if( ttl == null )
+            return;
+
+        try {
+            this.missingTtl = Long.parseLong(ttl);
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 missing attributes cache ttl: `{}` -- Using default", ttl);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ttl=" + ttl +
+                "; maxSize=" + maxSize +
+                "; missingTtl=" + missingTtl;
+    }
+}
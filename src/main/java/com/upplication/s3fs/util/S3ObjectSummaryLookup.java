@@ -49,8 +49,8 @@ import java.nio.file.NoSuchFileException;
 import java.util.List;
 
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.amazonaws.services.s3.model.ListObjectsRequest;
-import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
@@ -72,13 +72,32 @@ public class S3ObjectSummaryLookup {
     public S3ObjectSummary lookup(S3Path s3Path) throws NoSuchFileException {
 
         /*
-         * check is object summary has been cached
+         * check if the path has been recently looked up or listed
          */
-        S3ObjectSummary summary = s3Path.fetchObjectSummary();
+        final S3ObjectSummaryCache cache = s3Path.getFileSystem().getSummaryCache();
+        S3ObjectSummary summary = cache.get(s3Path.getBucket(), s3Path.getKey());
         if( summary != null ) {
             return summary;
         }
 
+        if( cache.isMissing(s3Path.getBucket(), s3Path.getKey()) ) {
+            throw new NoSuchFileException("s3://" + s3Path.getBucket() + "/" + s3Path.toString());
+        }
+
+        try {
+            summary = lookup0(s3Path);
+        }
+        catch( NoSuchFileException e ) {
+            cache.putMissing(s3Path.getBucket(), s3Path.getKey());
+            throw e;
+        }
+        cache.put(s3Path.getBucket(), s3Path.getKey(), summary);
+        return summary;
+    }
+
+    private S3ObjectSummary lookup0(S3Path s3Path) throws NoSuchFileException {
+
+        S3ObjectSummary summary;
         final AmazonS3Client client = s3Path.getFileSystem().getClient();
 
         /*
@@ -101,19 +120,69 @@ public class S3ObjectSummaryLookup {
         }
 
         /*
-         * Lookup for the object summary for the specified object key
-         * by using a `listObjects` request
+         * check if an object exists with the exact key
          */
-        String marker = null;
+        ObjectMetadata meta;
+        try {
+            meta = client.getObjectMetadata(s3Path.getBucket(), s3Path.getKey());
+        }
+        catch (AmazonS3Exception e) {
+            if( e.getStatusCode() != 404 ) {
+                // e.g. no read permission on the object, fallback on the listing
+                log.debug("Unable to get metadata for Amazon S3 object: s3://{}/{} -- Cause: {}", s3Path.getBucket(), s3Path.getKey(), e.getMessage());
+                return scan(s3Path);
+            }
+            meta = null;
+        }
+
+        if( meta != null ) {
+            summary = new S3ObjectSummary();
+            summary.setBucketName(s3Path.getBucket());
+            summary.setKey(s3Path.getKey());
+            summary.setETag(meta.getETag());
+            summary.setLastModified(meta.getLastModified());
+            summary.setSize(meta.getContentLength());
+            summary.setStorageClass(meta.getStorageClass());
+            return summary;
+        }
+
+        /*
+         * otherwise it can be a directory, check if there's any object having
+         * the key followed by a slash as prefix
+         */
+        ListObjectsV2Request request = new ListObjectsV2Request();
+        request.setBucketName(s3Path.getBucket());
+        request.setPrefix(s3Path.getKey() + "/");
+        request.setMaxKeys(1);
+        request.setFetchOwner(false);
+
+        List<S3ObjectSummary> results = client.listObjectsV2(request).getObjectSummaries();
+        if( !results.isEmpty() ) {
+            return results.get(0);
+        }
+
+        throw new NoSuchFileException("s3://" + s3Path.getBucket() + "/" + s3Path.toString());
+    }
+
+    /**
+     * Lookup for the object summary for the specified object key
+     * by scanning the objects having the key as prefix
+     */
+    private S3ObjectSummary scan(S3Path s3Path) throws NoSuchFileException {
+
+        final AmazonS3Client client = s3Path.getFileSystem().getClient();
+
+        String token = null;
         while( true ) {
-            ListObjectsRequest request = new ListObjectsRequest();
+            ListObjectsV2Request request = new ListObjectsV2Request();
             request.setBucketName(s3Path.getBucket());
             request.setPrefix(s3Path.getKey());
-            request.setMaxKeys(250);
-            if( marker != null )
-                request.setMarker(marker);
+            request.setMaxKeys(s3Path.getFileSystem().getListOptions().getPageSize());
+            request.setFetchOwner(false);
+            if( token != null )
+                request.setContinuationToken(token);
 
-            ObjectListing listing = client.listObjects(request);
+            ListObjectsV2Result listing = client.listObjectsV2(request);
             List<S3ObjectSummary> results = listing.getObjectSummaries();
 
             if (results.isEmpty()){
@@ -127,7 +196,7 @@ public class S3ObjectSummaryLookup {
             }
 
             if( listing.isTruncated() )
-                marker = listing.getNextMarker();
+                token = listing.getNextContinuationToken();
             else
                 break;
         }
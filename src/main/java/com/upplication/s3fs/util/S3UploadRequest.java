@@ -26,6 +26,9 @@ import com.amazonaws.services.s3.model.StorageClass;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Properties;
 
 /**
@@ -35,6 +38,8 @@ public class S3UploadRequest extends S3MultipartOptions<S3UploadRequest> {
 
     private static final Logger log = LoggerFactory.getLogger(S3UploadRequest.class);
 
+    public static final long DEFAULT_BUFFER_WAIT = 60_000;
+
     /**
      * ID of the S3 object to store data into.
      */
@@ -50,6 +55,23 @@ public class S3UploadRequest extends S3MultipartOptions<S3UploadRequest> {
      */
     private ObjectMetadata metadata;
 
+    /**
+     * Max amount of memory (bytes) used by the upload buffers of all the streams, zero for unbounded.
+     * Each open stream holds a buffer of the chunk size, thus a thread should not write to more than
+     * {@code bufferMemory / chunkSize} streams at the same time, otherwise it waits for the
+     * {@link #bufferWait} time, then it uses a buffer outside the budget
+     */
+    private long bufferMemory;
+
+    /**
+     * Max time (milliseconds) to wait for a free upload buffer when the buffer memory is exhausted
+     */
+    private long bufferWait = DEFAULT_BUFFER_WAIT;
+
+    /**
+     * Local directory where the parts are spilled when the buffer memory is exhausted, {@code null} to wait for a free buffer
+     */
+    private Path spillDir;
 
 
     public S3UploadRequest() {
@@ -60,6 +82,9 @@ public class S3UploadRequest extends S3MultipartOptions<S3UploadRequest> {
         super(props);
         setStorageClass(props.getProperty("upload_storage_class"));
         setStorageEncryption(props.getProperty("storage_encryption"));
+        setBufferMemory(props.getProperty("upload_buffer_memory"));
+        setBufferWait(props.getProperty("upload_buffer_wait"));
+        setSpillDir(props.getProperty("upload_spill_dir"));
     }
 
     public S3ObjectId getObjectId() {
@@ -74,6 +99,18 @@ public class S3UploadRequest extends S3MultipartOptions<S3UploadRequest> {
         return metadata;
     }
 
+    public long getBufferMemory() {
+        return bufferMemory;
+    }
+
+    public long getBufferWait() {
+        return bufferWait;
+    }
+
+    public Path getSpillDir() {
+        return spillDir;
+    }
+
 
     public S3UploadRequest setObjectId(S3ObjectId objectId) {
         this.objectId = objectId;
@@ -118,10 +155,67 @@ public class S3UploadRequest extends S3MultipartOptions<S3UploadRequest> {
         return this;
     }
 
+    public S3UploadRequest setBufferMemory(long bufferMemory) {
+        this.bufferMemory = bufferMemory;
+        return this;
+    }
+
+    public S3UploadRequest setBufferWait(long bufferWait) {
+        this.bufferWait = bufferWait;
+        return this;
+    }
+
+    public S3UploadRequest setBufferWait(String bufferWait) {
+        if( bufferWait == null )
+            return this;
+
+        try {
+            setBufferWait(Long.parseLong(bufferWait));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 upload buffer wait: `{}` -- Using default", bufferWait);
+        }
+        return this;
+    }
+
+    public S3UploadRequest setBufferMemory(String bufferMemory) {
+        if( bufferMemory == null )
+            return this;
+
+        try {
+            setBufferMemory(Long.parseLong(bufferMemory));
+        }
+        catch( NumberFormatException e ) {
+            log.warn("Not a valid AWS S3 upload buffer memory: `{}` -- Using default", bufferMemory);
+        }
+        return this;
+    }
+
+    public S3UploadRequest setSpillDir(Path spillDir) {
+        this.spillDir = spillDir;
+        return this;
+    }
+
+    public S3UploadRequest setSpillDir(String spillDir) {
+        if( spillDir == null )
+            return this;
+
+        try {
+            setSpillDir(Paths.get(spillDir));
+        }
+        catch( InvalidPathException e ) {
+            log.warn("Not a valid AWS S3 upload spill directory: `{}` -- Ignoring it", spillDir);
+        }
+        return this;
+    }
+
     public String toString() {
         return "objectId=" + objectId +
                 "storageClass=" + storageClass +
                 "metadata=" + metadata +
+                "bufferMemory=" + bufferMemory +
+                "bufferWait=" + bufferWait +
+                "spillDir=" + spillDir +
                 super.toString();
     }
 
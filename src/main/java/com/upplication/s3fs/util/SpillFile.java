@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local scratch file holding the upload parts which cannot get a memory buffer.
+ * <p>
+ * The file is split in regions, each region is memory-mapped and returned as a
+ * {@link ByteBuffer} so that writers can fill it as any other buffer. Once the part
+ * has been uploaded the region is released and reused by the next part of the same size.
+ */
+public class SpillFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    /**
+     * The offsets of the regions currently in use, indexed by the mapped buffer
+     */
+    private final Map<ByteBuffer, Long> inUse = Collections.synchronizedMap(new IdentityHashMap<ByteBuffer, Long>());
+
+    /**
+     * The offsets of the released regions, indexed by the region size
+     */
+    private final Map<Integer, Deque<Long>> free = new HashMap<>();
+
+    private long length;
+
+    /**
+     * Creates a spill file in the given directory
+     *
+     * @param dir The directory where the file is created
+     * @throws IOException When the file cannot be created
+     */
+    public SpillFile(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        this.path = Files.createTempFile(dir, "s3-upload-", ".spill");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        log.trace("Created upload spill file: {}", path);
+    }
+
+    /**
+     * @param regionSize The size of the region (bytes)
+     * @return A buffer mapping a free region of the file
+     * @throws IOException
+     */
+    public synchronized ByteBuffer map(int regionSize) throws IOException {
+        final Deque<Long> queue = free.get(regionSize);
+        Long offset = queue != null ? queue.poll() : null;
+        if( offset == null ) {
+            offset = length;
+            length += regionSize;
+        }
+        final ByteBuffer result = channel.map(FileChannel.MapMode.READ_WRITE, offset, regionSize);
+        inUse.put(result, offset);
+        return result;
+    }
+
+    /**
+     * @param buffer A buffer returned by {@link #map(int)}
+     * @return The offset in the file of the region mapped by the given buffer or {@code null}
+     *      when the buffer does not belong to this file
+     */
+    public Long offsetOf(ByteBuffer buffer) {
+        return inUse.get(buffer);
+    }
+
+    /**
+     * Releases the region mapped by the given buffer so that it can be reused
+     *
+     * @param buffer A buffer returned by {@link #map(int)}
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        final Long offset = inUse.remove(buffer);
+        if( offset == null )
+            return;
+        Deque<Long> queue = free.get(buffer.capacity());
+        if( queue == null ) {
+            queue = new ArrayDeque<>();
+            free.put(buffer.capacity(), queue);
+        }
+        queue.push(offset);
+    }
+
+    public File getFile() {
+        return path.toFile();
+    }
+
+    /**
+     * Closes and deletes the file
+     */
+    @Override
+    public synchronized void close() {
+        inUse.clear();
+        free.clear();
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            log.warn("Unable to delete upload spill file: {} -- Cause: {}", path, e.getMessage());
+        }
+    }
+}
@@ -162,7 +162,7 @@ public class AmazonS3ClientIT {
 		opts.setChunkSize(5 * _1MB);
 
 		// -- copy to target name
-		client.multipartCopyObject(source,target,null,opts);
+		client.multipartCopyObject(source,target,client.getObjectMetadata(bucket,sourceName),null,opts);
 
 		// read the file
 		byte[] copy = Files.readAllBytes(target);
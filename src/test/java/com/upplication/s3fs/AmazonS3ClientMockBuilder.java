@@ -51,6 +51,7 @@ import java.net.URI;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Properties;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
@@ -137,9 +138,17 @@ public class AmazonS3ClientMockBuilder {
      * @return AmazonS3ClientMock and ready to stub with mockito.
      */
     public AmazonS3ClientMock build(S3FileSystemProvider provider){
+        return build(provider, null);
+    }
+
+    /**
+     * @param provider The provider creating the file system
+     * @param props The file system properties e.g. the attributes cache options, or {@code null} for the defaults
+     */
+    public AmazonS3ClientMock build(S3FileSystemProvider provider, Properties props){
         try {
             AmazonS3ClientMock clientMock = spy(new AmazonS3ClientMock(fs.getPath("/")));
-            S3FileSystem s3ileS3FileSystem = new S3FileSystem(provider, clientMock, "endpoint");
+            S3FileSystem s3ileS3FileSystem = new S3FileSystem(provider, clientMock, "endpoint", props);
             doReturn(s3ileS3FileSystem).when(provider).createFileSystem(any(URI.class), anyObject(), anyObject());
             return clientMock;
         } catch (IOException e) {
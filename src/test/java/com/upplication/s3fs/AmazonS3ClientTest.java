@@ -46,15 +46,33 @@ package com.upplication.s3fs;
 
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.*;
+import com.upplication.s3fs.util.S3DownloadOptions;
+import com.upplication.s3fs.util.S3MultipartOptions;
+import com.upplication.s3fs.util.S3UploadRequest;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -113,6 +131,215 @@ public class AmazonS3ClientTest {
         verify(amazonS3).deleteObject(eq(bucket), eq(keyName));
     }
 
+    @Test
+    public void deleteObjects(){
+
+        DeleteObjectsRequest request = new DeleteObjectsRequest("bucket").withKeys("key1", "key2");
+        DeleteObjectsResult expectedResult = new DeleteObjectsResult(new ArrayList<DeleteObjectsResult.DeletedObject>());
+        when(amazonS3.deleteObjects(request)).thenReturn(expectedResult);
+
+        DeleteObjectsResult actualResult = amazonS3Client.deleteObjects(request);
+
+        verify(amazonS3).deleteObjects(eq(request));
+        assertEquals(expectedResult, actualResult);
+    }
+
+    @Test
+    public void uploadSmallFile() throws IOException {
+
+        File file = File.createTempFile("upload", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "small-content".getBytes());
+
+        S3UploadRequest request = new S3UploadRequest()
+                .setObjectId(new S3ObjectId("bucket", "dir/file.txt"))
+                .setStorageClass(StorageClass.ReducedRedundancy);
+        amazonS3Client.uploadFile(file, request);
+
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(amazonS3).putObject(captor.capture());
+        assertEquals("bucket", captor.getValue().getBucketName());
+        assertEquals("dir/file.txt", captor.getValue().getKey());
+        assertEquals(file, captor.getValue().getFile());
+        assertEquals(StorageClass.ReducedRedundancy.toString(), captor.getValue().getStorageClass());
+        verify(amazonS3, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void uploadLargeFileInParts() throws IOException {
+
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[23]);
+
+        InitiateMultipartUploadResult init = new InitiateMultipartUploadResult();
+        init.setUploadId("upload-1");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(init);
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenAnswer(new Answer<UploadPartResult>() {
+            @Override
+            public UploadPartResult answer(InvocationOnMock invocation) {
+                UploadPartRequest request = (UploadPartRequest) invocation.getArguments()[0];
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            }
+        });
+
+        S3UploadRequest request = new S3UploadRequest()
+                .setObjectId(new S3ObjectId("bucket", "file.bin"))
+                .setChunkSize(10)
+                .setMaxThreads(2)
+                .setMaxAttempts(1);
+        amazonS3Client.uploadFile(file, request);
+
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(amazonS3, times(3)).uploadPart(parts.capture());
+        Map<Integer, UploadPartRequest> partsByNumber = new TreeMap<>();
+        for (UploadPartRequest part : parts.getAllValues()) {
+            assertEquals("upload-1", part.getUploadId());
+            assertEquals(file, part.getFile());
+            partsByNumber.put(part.getPartNumber(), part);
+        }
+        assertEquals(0L, partsByNumber.get(1).getFileOffset());
+        assertEquals(10L, partsByNumber.get(2).getFileOffset());
+        assertEquals(20L, partsByNumber.get(3).getFileOffset());
+        assertEquals(3L, partsByNumber.get(3).getPartSize());
+        assertTrue(partsByNumber.get(3).isLastPart());
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(amazonS3).completeMultipartUpload(complete.capture());
+        assertEquals(3, complete.getValue().getPartETags().size());
+        verify(amazonS3, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void uploadFileAbortsOnFailure() throws IOException {
+
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[23]);
+
+        InitiateMultipartUploadResult init = new InitiateMultipartUploadResult();
+        init.setUploadId("upload-1");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(init);
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenThrow(new AmazonS3Exception("boom"));
+
+        S3UploadRequest request = new S3UploadRequest()
+                .setObjectId(new S3ObjectId("bucket", "file.bin"))
+                .setChunkSize(10)
+                .setMaxThreads(2)
+                .setMaxAttempts(1);
+        try {
+            amazonS3Client.uploadFile(file, request);
+            fail();
+        }
+        catch (IOException e) {
+            verify(amazonS3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+            verify(amazonS3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        }
+    }
+
+    @Test
+    public void multipartCopyPreservesMetadata() {
+
+        ObjectMetadata source = new ObjectMetadata();
+        source.setContentLength(23);
+        source.setContentType("text/csv");
+        source.setCacheControl("no-cache");
+        source.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+        source.addUserMetadata("owner", "alice");
+        source.setHeader(Headers.STORAGE_CLASS, "STANDARD_IA");
+        source.setHeader(Headers.ETAG, "etag-1");
+
+        InitiateMultipartUploadResult init = new InitiateMultipartUploadResult();
+        init.setUploadId("upload-1");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(init);
+        when(amazonS3.copyPart(any(CopyPartRequest.class))).thenAnswer(new Answer<CopyPartResult>() {
+            @Override
+            public CopyPartResult answer(InvocationOnMock invocation) {
+                CopyPartRequest request = (CopyPartRequest) invocation.getArguments()[0];
+                CopyPartResult result = new CopyPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            }
+        });
+
+        S3FileSystem fs = new S3FileSystem(new S3FileSystemProvider(), amazonS3Client, "");
+        S3MultipartOptions opts = new S3MultipartOptions();
+        opts.setChunkSize(10);
+        amazonS3Client.multipartCopyObject(new S3Path(fs, "/bucket/source.csv"), new S3Path(fs, "/bucket/target.csv"), source, null, opts);
+
+        ArgumentCaptor<InitiateMultipartUploadRequest> captor = ArgumentCaptor.forClass(InitiateMultipartUploadRequest.class);
+        verify(amazonS3).initiateMultipartUpload(captor.capture());
+        ObjectMetadata target = captor.getValue().getObjectMetadata();
+        assertEquals("text/csv", target.getContentType());
+        assertEquals("no-cache", target.getCacheControl());
+        assertEquals(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION, target.getSSEAlgorithm());
+        assertEquals("alice", target.getUserMetaDataOf("owner"));
+        // response only headers are not sent
+        assertNull(target.getETag());
+        assertNull(target.getRawMetadataValue(Headers.CONTENT_LENGTH));
+        // the storage class of the source is kept
+        assertEquals("STANDARD_IA", captor.getValue().getStorageClass().toString());
+        verify(amazonS3, times(3)).copyPart(any(CopyPartRequest.class));
+        verify(amazonS3, never()).getObjectMetadata(any(GetObjectMetadataRequest.class));
+        verify(amazonS3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void multipartCopyWithStorageClass() {
+
+        ObjectMetadata source = new ObjectMetadata();
+        source.setContentLength(23);
+
+        InitiateMultipartUploadResult init = new InitiateMultipartUploadResult();
+        init.setUploadId("upload-1");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(init);
+        when(amazonS3.copyPart(any(CopyPartRequest.class))).thenReturn(new CopyPartResult());
+
+        S3FileSystem fs = new S3FileSystem(new S3FileSystemProvider(), amazonS3Client, "");
+        S3MultipartOptions opts = new S3MultipartOptions();
+        opts.setChunkSize(10);
+        amazonS3Client.multipartCopyObject(new S3Path(fs, "/bucket/source"), new S3Path(fs, "/bucket/target"), source, StorageClass.ReducedRedundancy, opts);
+
+        ArgumentCaptor<InitiateMultipartUploadRequest> captor = ArgumentCaptor.forClass(InitiateMultipartUploadRequest.class);
+        verify(amazonS3).initiateMultipartUpload(captor.capture());
+        assertEquals(StorageClass.ReducedRedundancy, captor.getValue().getStorageClass());
+    }
+
+    @Test
+    public void downloadFileFailsOnShortChunk() throws IOException {
+
+        ObjectMetadata meta = new ObjectMetadata();
+        meta.setContentLength(20);
+        meta.setHeader(Headers.ETAG, "etag-1");
+        when(amazonS3.getObjectMetadata("bucket", "file.bin")).thenReturn(meta);
+        // the second chunk comes back one byte short
+        doAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                long start = (Long) invocation.getArguments()[1];
+                long end = (Long) invocation.getArguments()[2];
+                return new byte[(int) (end - start + (start == 0 ? 1 : 0))];
+            }
+        }).when(amazonS3Client).getObjectRange(any(S3ObjectId.class), anyLong(), anyLong(), anyString(), any(S3DownloadOptions.class));
+
+        Path file = Files.createTempFile("download", ".bin");
+        try {
+            amazonS3Client.downloadFile(new S3ObjectId("bucket", "file.bin"), file, new S3DownloadOptions().setChunkSize(10));
+            fail("Download of a short chunk should fail");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Size of downloaded file"));
+            assertFalse(Files.exists(file));
+        }
+        finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
     @Test
     public void getObject(){
 
@@ -223,6 +450,19 @@ public class AmazonS3ClientTest {
         assertEquals(expectedResult, actualResult);
     }
 
+    @Test
+    public void listObjectsV2(){
+
+        ListObjectsV2Request listObjectsRequest = new ListObjectsV2Request();
+        ListObjectsV2Result expectedResult = mock(ListObjectsV2Result.class);
+        when(amazonS3.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(expectedResult);
+
+        ListObjectsV2Result actualResult = amazonS3Client.listObjectsV2(listObjectsRequest);
+
+        verify(amazonS3).listObjectsV2(eq(listObjectsRequest));
+        assertEquals(expectedResult, actualResult);
+    }
+
     @Test
     public void listNextBatchOfObjects(){
 
@@ -47,14 +47,22 @@ package com.upplication.s3fs;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.Protocol;
 import com.amazonaws.services.s3.model.AccessControlList;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.IOUtils;
+import com.upplication.s3fs.util.S3UploadRequest;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -67,6 +75,7 @@ import java.util.*;
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -430,6 +439,48 @@ public class FileSystemProviderTest {
 		assertArrayEquals(res.getBytes(), buffer);
 	}
 
+
+	@Test
+	public void inputStreamParallelChunks() throws IOException{
+		// fixtures
+		String res = "content downloaded by using many ranged requests";
+		new AmazonS3ClientMockBuilder(fsMem)
+				.withBucket("bucketA")
+				.withFile("dir/file1", res)
+				.build(provider);
+		Properties props = new Properties();
+		props.setProperty("download_chunk_size", "5");
+		props.setProperty("download_buffer_max_size", "15");
+		doReturn(props).when(provider).loadAmazonProperties();
+		// act
+		Path file = createNewS3FileSystem().getPath("/bucketA/dir/file1");
+
+		byte[] buffer;
+		try (InputStream stream = provider.newInputStream(file)) {
+			assertTrue(stream instanceof S3ParallelInputStream);
+			buffer = IOUtils.toByteArray(stream);
+		}
+		// check
+		assertArrayEquals(res.getBytes(), buffer);
+	}
+
+	@Test
+	public void inputStreamEmptyFile() throws IOException{
+		// fixtures
+		new AmazonS3ClientMockBuilder(fsMem)
+				.withBucket("bucketA")
+				.withFile("dir/file1")
+				.build(provider);
+		// act
+		Path file = createNewS3FileSystem().getPath("/bucketA/dir/file1");
+
+		byte[] buffer;
+		try (InputStream stream = provider.newInputStream(file)) {
+			buffer = IOUtils.toByteArray(stream);
+		}
+		// check
+		assertEquals(0, buffer.length);
+	}
 	
 	@Test(expected = IOException.class)
 	public void inputStreamDirectory() throws IOException{
@@ -712,6 +763,39 @@ public class FileSystemProviderTest {
         assertArrayEquals("content".getBytes(), Files.readAllBytes(base.resolve("file")));
     }
 
+    @Test
+    public void seekableReadRandomAccess() throws IOException{
+        final String content = "random access content";
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file", content)
+                .build(provider);
+        Properties props = new Properties();
+        props.setProperty("download_block_size", "4");
+        doReturn(props).when(provider).loadAmazonProperties();
+
+        Path file = createNewS3FileSystem().getPath("/bucketA/dir/file");
+
+        ByteBuffer bufferRead = ByteBuffer.allocate(6);
+        ByteBuffer bufferAgain = ByteBuffer.allocate(6);
+        try (SeekableByteChannel seekable = provider.newByteChannel(file, EnumSet.of(StandardOpenOption.READ))){
+            assertTrue(seekable instanceof S3SeekableByteChannel);
+            assertEquals(content.length(), seekable.size());
+            seekable.position(7);
+            assertEquals(6, seekable.read(bufferRead));
+            assertEquals(13, seekable.position());
+            seekable.position(7);
+            seekable.read(bufferAgain);
+            seekable.position(content.length());
+            assertEquals(-1, seekable.read(ByteBuffer.allocate(1)));
+        }
+
+        assertArrayEquals("access".getBytes(), bufferRead.array());
+        assertArrayEquals("access".getBytes(), bufferAgain.array());
+        // only the three blocks holding the requested range are downloaded, once
+        verify(client, times(3)).getObject(any(GetObjectRequest.class));
+    }
+
     @Test
     public void seekableTruncate() throws IOException {
         final String content = "content";
@@ -875,6 +959,58 @@ public class FileSystemProviderTest {
         provider.delete(file.getParent());
     }
 
+    @Test
+    public void deleteFileWithSingleRequest() throws IOException{
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file")
+                .build(provider);
+
+        Path file = createNewS3FileSystem().getPath("/bucketA/dir/file");
+        provider.delete(file);
+
+        verify(client, times(1)).deleteObjects(any(DeleteObjectsRequest.class));
+        verify(client, never()).deleteObject(anyString(), anyString());
+        assertTrue(Files.notExists(file));
+    }
+
+    @Test
+    public void deleteRecursively() throws IOException{
+        AmazonS3ClientMockBuilder builder = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("other/file")
+                .withFile("dirA/file")
+                .withDirectory("dirA/sub/empty");
+        for (int i = 0; i < 2500; i++) {
+            builder.withFile(String.format("dir/sub%d/file-%04d", i % 3, i));
+        }
+        AmazonS3ClientMock client = builder.build(provider);
+
+        FileSystem fs = createNewS3FileSystem();
+        Path dir = fs.getPath("/bucketA/dir");
+        assertTrue(Files.isDirectory(dir.resolve("sub1")));
+
+        provider.deleteRecursively(dir);
+
+        // 2500 files, the directory key and its marker in three batches
+        verify(client, times(3)).deleteObjects(any(DeleteObjectsRequest.class));
+        assertTrue(Files.notExists(dir));
+        assertTrue(Files.notExists(dir.resolve("sub1")));
+        assertTrue(Files.exists(fs.getPath("/bucketA/dirA/file")));
+        assertTrue(Files.exists(fs.getPath("/bucketA/dirA/sub/empty")));
+        assertTrue(Files.exists(fs.getPath("/bucketA/other/file")));
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void deleteRecursivelyNotExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withDirectory("dir")
+                .build(provider);
+
+        provider.deleteRecursively(createNewS3FileSystem().getPath("/bucketA/dir/missing"));
+    }
+
     @Test(expected = NoSuchFileException.class)
     public void deleteFileNotExists() throws IOException{
 
@@ -908,6 +1044,159 @@ public class FileSystemProviderTest {
 		assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
 	}
 
+    @Test
+    public void copyFetchesSourceMetadataOnce() throws IOException{
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1", "content-file-1")
+                .withDirectory("dir2")
+                .build(provider);
+
+        FileSystem fs = createNewS3FileSystem();
+        // act
+        provider.copy(fs.getPath("/bucketA/dir/file1"), fs.getPath("/bucketA/dir2/file2"));
+        // assert: a HEAD of the source and a HEAD of the target, no listing
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file1");
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir2/file2");
+        verify(client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void copyWithReplaceDoesNotCheckTarget() throws IOException{
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1", "content-file-1")
+                .withFile("dir2/file2", "content-file-2")
+                .build(provider);
+
+        FileSystem fs = createNewS3FileSystem();
+        Path fileDest = fs.getPath("/bucketA/dir2/file2");
+        // act
+        provider.copy(fs.getPath("/bucketA/dir/file1"), fileDest, StandardCopyOption.REPLACE_EXISTING);
+        // assert
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file1");
+        verify(client, never()).getObjectMetadata("bucketA", "dir2/file2");
+        assertArrayEquals("content-file-1".getBytes(), Files.readAllBytes(fileDest));
+    }
+
+    @Test(expected = NoSuchFileException.class)
+    public void copyNotExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withDirectory("dir")
+                .build(provider);
+
+        FileSystem fs = createNewS3FileSystem();
+        provider.copy(fs.getPath("/bucketA/dir/missing"), fs.getPath("/bucketA/dir/file2"));
+    }
+
+    @Test
+    public void copyLocalFile() throws IOException{
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withDirectory("dir")
+                .build(provider);
+
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            Files.write(local, "local-content".getBytes());
+            // act
+            Path fileDest = createNewS3FileSystem().getPath("/bucketA/dir/file.txt");
+            provider.copy(local, fileDest);
+            // assert
+            verify(client).uploadFile(eq(local.toFile()), any(S3UploadRequest.class));
+            assertTrue(Files.exists(fileDest));
+            assertArrayEquals("local-content".getBytes(), Files.readAllBytes(fileDest));
+        }
+        finally {
+            Files.delete(local);
+        }
+    }
+
+    @Test
+    public void copyToLocalFile() throws IOException{
+        final String content = "0123456789abcdefghij";
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file.txt", content)
+                .build(provider);
+
+        Map<String, Object> env = new HashMap<>(buildFakeEnv());
+        env.put("download_chunk_size", "6");
+        FileSystem fs = provider.newFileSystem(S3_GLOBAL_URI, env);
+
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            // act
+            provider.copy(fs.getPath("/bucketA/dir/file.txt"), local, StandardCopyOption.REPLACE_EXISTING);
+            // assert
+            assertArrayEquals(content.getBytes(), Files.readAllBytes(local));
+            // 20 bytes in chunks of 6 bytes
+            verify(client, times(4)).getObject(any(GetObjectRequest.class));
+        }
+        finally {
+            Files.deleteIfExists(local);
+        }
+    }
+
+    @Test
+    public void downloadFailureDeletesLocalFile() throws IOException{
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file.txt", "content")
+                .build(provider);
+        // the object has been modified, the ranged request does not match the ETag
+        doReturn(null).when(client).getObject(any(GetObjectRequest.class));
+
+        Map<String, Object> env = new HashMap<>(buildFakeEnv());
+        env.put("download_max_attempts", "1");
+        FileSystem fs = provider.newFileSystem(S3_GLOBAL_URI, env);
+
+        Path local = Files.createTempDirectory("local").resolve("file.txt");
+        try {
+            provider.download(fs.getPath("/bucketA/dir/file.txt"), local);
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(Files.notExists(local));
+        }
+        finally {
+            Files.delete(local.getParent());
+        }
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void downloadAlreadyExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file.txt")
+                .build(provider);
+
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            provider.download(createNewS3FileSystem().getPath("/bucketA/dir/file.txt"), local);
+        }
+        finally {
+            Files.delete(local);
+        }
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void uploadAlreadyExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file.txt")
+                .build(provider);
+
+        Path local = Files.createTempFile("local", ".txt");
+        try {
+            provider.upload(local, createNewS3FileSystem().getPath("/bucketA/dir/file.txt"));
+        }
+        finally {
+            Files.delete(local);
+        }
+    }
+
     @Test
     public void copySameFile() throws IOException{
         final String content = "sample-content";
@@ -961,11 +1250,12 @@ public class FileSystemProviderTest {
 
     // move
 	
-	@Test(expected = UnsupportedOperationException.class)
+	@Test
 	public void move() throws IOException{
-        new AmazonS3ClientMockBuilder(fsMem)
+        final String content = "content-file-1";
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
                 .withBucket("bucketA")
-                .withFile("dir/file1")
+                .withFile("dir/file1", content)
                 .withDirectory("dir2")
                 .build(provider);
 		// act
@@ -973,6 +1263,172 @@ public class FileSystemProviderTest {
 		Path file = fs.getPath("/bucketA/dir/file1");
 		Path fileDest = fs.getPath("/bucketA", "dir2", "file2");
 		provider.move(file, fileDest);
+		// assert
+		assertTrue(Files.notExists(file));
+		assertTrue(Files.exists(fileDest));
+		assertArrayEquals(content.getBytes(), Files.readAllBytes(fileDest));
+		verify(client, never()).getObject(anyString(), anyString());
+	}
+
+	@Test
+	public void moveDirectory() throws IOException{
+        AmazonS3ClientMockBuilder builder = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("staging/a/file1", "content-1")
+                .withDirectory("staging/empty")
+                .withFile("staging-other/file");
+        for (int i = 0; i < 50; i++) {
+            builder.withFile(String.format("staging/b/file-%02d", i));
+        }
+        builder.build(provider);
+		// act
+		FileSystem fs = createNewS3FileSystem();
+		Path dir = fs.getPath("/bucketA/staging");
+		Path dirDest = fs.getPath("/bucketA/results");
+		provider.move(dir, dirDest);
+		// assert
+		assertTrue(Files.notExists(dir));
+		assertTrue(Files.exists(fs.getPath("/bucketA/staging-other/file")));
+		assertArrayEquals("content-1".getBytes(), Files.readAllBytes(dirDest.resolve("a/file1")));
+		assertTrue(Files.isDirectory(dirDest.resolve("empty")));
+		assertTrue(Files.exists(dirDest.resolve("b/file-49")));
+		assertEquals(50, countEntries(dirDest.resolve("b")));
+	}
+
+	@Test
+	public void copyRecursively() throws IOException{
+        AmazonS3ClientMockBuilder builder = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketB")
+                .withBucket("bucketA")
+                .withFile("results/a/file1", "content-1")
+                .withDirectory("results/empty");
+        for (int i = 0; i < 50; i++) {
+            builder.withFile(String.format("results/b/file-%02d", i));
+        }
+        builder.build(provider);
+		// act
+		FileSystem fs = createNewS3FileSystem();
+		Path dir = fs.getPath("/bucketA/results");
+		Path dirDest = fs.getPath("/bucketB/replica");
+		provider.copyRecursively(dir, dirDest);
+		// assert
+		assertTrue(Files.exists(dir.resolve("a/file1")));
+		assertArrayEquals("content-1".getBytes(), Files.readAllBytes(dirDest.resolve("a/file1")));
+		assertTrue(Files.isDirectory(dirDest.resolve("empty")));
+		assertEquals(50, countEntries(dir.resolve("b")));
+		assertEquals(50, countEntries(dirDest.resolve("b")));
+	}
+
+	@Test
+	public void copyRecursivelyReportsAllFailures() throws IOException{
+        AmazonS3ClientMockBuilder builder = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA");
+        for (int i = 0; i < 20; i++) {
+            builder.withFile(String.format("results/file-%02d", i));
+        }
+        AmazonS3ClientMock client = builder.build(provider);
+        doThrow(new AmazonS3Exception("boom-3")).when(client).getObjectMetadata("bucketA", "results/file-03");
+        doThrow(new AmazonS3Exception("boom-7")).when(client).getObjectMetadata("bucketA", "results/file-07");
+
+		FileSystem fs = createNewS3FileSystem();
+		Path dirDest = fs.getPath("/bucketA/replica");
+		try {
+			provider.copyRecursively(fs.getPath("/bucketA/results"), dirDest);
+			fail();
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("2 of 20"));
+			assertEquals(2, e.getSuppressed().length);
+		}
+		// the other objects are copied anyway
+		assertEquals(18, countEntries(dirDest));
+	}
+
+	@Test(expected = FileAlreadyExistsException.class)
+	public void copyRecursivelyAlreadyExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("results/file1")
+                .withFile("replica/file1")
+                .build(provider);
+		FileSystem fs = createNewS3FileSystem();
+		provider.copyRecursively(fs.getPath("/bucketA/results"), fs.getPath("/bucketA/replica"));
+	}
+
+	@Test(expected = FileAlreadyExistsException.class)
+	public void moveAlreadyExists() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1")
+                .withFile("dir/file2")
+                .build(provider);
+		FileSystem fs = createNewS3FileSystem();
+		provider.move(fs.getPath("/bucketA/dir/file1"), fs.getPath("/bucketA/dir/file2"));
+	}
+
+	@Test
+	public void moveDirectoryReplaceNotEmptyDirectory() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("staging/file1", "content-1")
+                .withFile("results/file2", "content-2")
+                .build(provider);
+		FileSystem fs = createNewS3FileSystem();
+		Path dir = fs.getPath("/bucketA/staging");
+		Path dirDest = fs.getPath("/bucketA/results");
+		try {
+			provider.move(dir, dirDest, StandardCopyOption.REPLACE_EXISTING);
+			fail("A non-empty directory cannot be replaced");
+		}
+		catch (DirectoryNotEmptyException e) {
+			// nothing has been moved
+			assertTrue(Files.exists(dir.resolve("file1")));
+			assertTrue(Files.notExists(dirDest.resolve("file1")));
+			assertTrue(Files.exists(dirDest.resolve("file2")));
+		}
+	}
+
+	@Test
+	public void moveDirectoryReplaceFile() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("staging/file1", "content-1")
+                .withFile("results", "content-2")
+                .build(provider);
+		FileSystem fs = createNewS3FileSystem();
+		Path dir = fs.getPath("/bucketA/staging");
+		Path dirDest = fs.getPath("/bucketA/results");
+		provider.move(dir, dirDest, StandardCopyOption.REPLACE_EXISTING);
+		// the target file has been replaced by the directory
+		assertTrue(Files.notExists(dir));
+		assertTrue(Files.isDirectory(dirDest));
+		assertArrayEquals("content-1".getBytes(), Files.readAllBytes(dirDest.resolve("file1")));
+		try {
+			((S3Path) dirDest).getFileSystem().getClient().getObjectMetadata("bucketA", "results");
+			fail("The target file should be deleted");
+		}
+		catch (AmazonS3Exception e) {
+			assertEquals(404, e.getStatusCode());
+		}
+	}
+
+	@Test(expected = AtomicMoveNotSupportedException.class)
+	public void moveAtomic() throws IOException{
+        new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1")
+                .build(provider);
+		FileSystem fs = createNewS3FileSystem();
+		provider.move(fs.getPath("/bucketA/dir/file1"), fs.getPath("/bucketA/dir/file2"), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private int countEntries(Path dir) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path ignored : stream)
+				count++;
+		}
+		return count;
 	}
 	
 	// isSameFile
@@ -1123,6 +1579,147 @@ public class FileSystemProviderTest {
         assertEquals(fileAttributes.lastAccessTime(), fileAttributes.lastModifiedTime());
     }
 
+    @Test
+    public void readAttributesOnDensePrefix() throws IOException {
+
+        AmazonS3ClientMockBuilder builder = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("results/sample1/file", "content")
+                .withFile("results/sample2", "content");
+        // many keys sharing the `results/sample1` prefix
+        for (int i = 0; i < 1500; i++) {
+            builder.withFile(String.format("results/sample1%04d", i));
+        }
+        AmazonS3ClientMock client = builder.build(provider);
+
+        FileSystem fs = createNewS3FileSystem();
+
+        // a file is found with a single request
+        BasicFileAttributes fileAttributes = provider.readAttributes(fs.getPath("/bucketA/results/sample2"), BasicFileAttributes.class);
+        assertTrue(fileAttributes.isRegularFile());
+        verify(client, times(1)).getObjectMetadata("bucketA", "results/sample2");
+        verify(client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+
+        // a directory requires a single listing returning at most one key
+        BasicFileAttributes dirAttributes = provider.readAttributes(fs.getPath("/bucketA/results/sample1"), BasicFileAttributes.class);
+        assertTrue(dirAttributes.isDirectory());
+        assertEquals("results/sample1/", dirAttributes.fileKey());
+        verify(client, times(1)).getObjectMetadata("bucketA", "results/sample1");
+        verify(client, times(1)).listObjectsV2(argThat(new ArgumentMatcher<ListObjectsV2Request>() {
+            @Override
+            public boolean matches(Object argument) {
+                ListObjectsV2Request request = (ListObjectsV2Request) argument;
+                return "results/sample1/".equals(request.getPrefix()) && request.getMaxKeys() == 1;
+            }
+        }));
+        verify(client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void readAttributesOfListedPaths() throws IOException {
+
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1", "content")
+                .withDirectory("dir/subdir")
+                .withFile("dir/subdir/file2")
+                .build(provider, cacheProperties());
+
+        S3FileSystem fs = (S3FileSystem) createNewS3FileSystem();
+
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/bucketA/dir"))) {
+            for (Path entry : stream)
+                entries.add(entry);
+        }
+        // the attributes are kept by the paths, not by the file system cache
+        fs.getSummaryCache().invalidateAll();
+        reset(client);
+
+        assertEquals(2, entries.size());
+        for (Path entry : entries) {
+            BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+            if (entry.getFileName().toString().equals("file1")) {
+                assertTrue(attrs.isRegularFile());
+                assertEquals(7L, attrs.size());
+            }
+            else {
+                assertEquals("subdir", entry.getFileName().toString());
+                assertTrue(attrs.isDirectory());
+            }
+            assertTrue(Files.exists(entry));
+        }
+        verifyZeroInteractions(client);
+
+        // modifying the path through the file system discards the attributes
+        Path file1 = entries.get(0).getFileName().toString().equals("file1") ? entries.get(0) : entries.get(1);
+        provider.delete(file1);
+        assertFalse(Files.exists(file1));
+    }
+
+    @Test
+    public void listedAttributesNotTrustedWhenCacheDisabled() throws IOException {
+
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file1", "content")
+                .build(provider);
+
+        S3FileSystem fs = (S3FileSystem) createNewS3FileSystem();
+
+        Path file1;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("/bucketA/dir"))) {
+            file1 = stream.iterator().next();
+        }
+        assertNotNull(((S3Path) file1).getAttributes());
+
+        // the object is removed by someone else
+        client.deleteObject("bucketA", "dir/file1");
+        assertFalse(Files.exists(file1));
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file1");
+    }
+
+    @Test
+    public void readAttributesAreCachedUntilModified() throws IOException {
+
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/file", "content")
+                .build(provider, cacheProperties());
+
+        FileSystem fs = createNewS3FileSystem();
+        Path file = fs.getPath("/bucketA/dir/file");
+
+        assertTrue(Files.exists(file));
+        assertEquals(7L, Files.size(file));
+        assertTrue(Files.isRegularFile(file));
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir/file");
+
+        // modifying the path through the file system invalidates the cached attributes
+        provider.delete(file);
+        assertFalse(Files.exists(file));
+        verify(client, times(2)).getObjectMetadata("bucketA", "dir/file");
+    }
+
+    @Test
+    public void missingPathsAreCachedUntilCreated() throws IOException {
+
+        AmazonS3ClientMock client = new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .build(provider, cacheProperties());
+
+        FileSystem fs = createNewS3FileSystem();
+        Path dir = fs.getPath("/bucketA/dir");
+
+        assertFalse(Files.exists(dir));
+        assertFalse(Files.exists(dir));
+        verify(client, times(1)).getObjectMetadata("bucketA", "dir");
+
+        // creating the path through the file system invalidates the missing entry
+        Files.createDirectory(dir);
+        assertTrue(Files.exists(dir));
+    }
+
     @Test
     public void readAnotherAttributesDirectory() throws IOException {
 
@@ -1334,6 +1931,16 @@ public class FileSystemProviderTest {
         return provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
     }
 
+    /**
+     * @return The file system properties enabling the attributes cache, since it is disabled by default
+     */
+    private Properties cacheProperties() {
+        Properties props = new Properties();
+        props.setProperty("attributes_cache_ttl", "30000");
+        props.setProperty("attributes_cache_missing_ttl", "5000");
+        return props;
+    }
+
 
 	@Test
 	public void testCreateClientConfig() {
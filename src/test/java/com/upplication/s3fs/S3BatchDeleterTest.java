@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException.DeleteError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class S3BatchDeleterTest {
+
+    private ExecutorService executor;
+
+    private AmazonS3Client client;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(4);
+        client = mock(AmazonS3Client.class);
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void deleteInBatches() throws IOException {
+        when(client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(new DeleteObjectsResult(new ArrayList<DeleteObjectsResult.DeletedObject>()));
+
+        S3BatchDeleter deleter = new S3BatchDeleter(client, "bucket", executor, 2);
+        for( int i=0; i<2500; i++ )
+            deleter.add("key-" + i);
+        deleter.await();
+
+        ArgumentCaptor<DeleteObjectsRequest> captor = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(client, times(3)).deleteObjects(captor.capture());
+        int total = 0;
+        for( DeleteObjectsRequest request : captor.getAllValues() ) {
+            assertEquals("bucket", request.getBucketName());
+            assertTrue(request.getQuiet());
+            assertTrue(request.getKeys().size() <= S3BatchDeleter.MAX_KEYS);
+            total += request.getKeys().size();
+        }
+        assertEquals(2500, total);
+    }
+
+    @Test
+    public void reportFailedKeys() {
+        DeleteError error = new DeleteError();
+        error.setKey("key-1");
+        error.setCode("AccessDenied");
+        error.setMessage("Access Denied");
+        List<DeleteError> errors = Arrays.asList(error);
+        when(client.deleteObjects(any(DeleteObjectsRequest.class))).thenThrow(new MultiObjectDeleteException(errors, new ArrayList<DeleteObjectsResult.DeletedObject>()));
+
+        S3BatchDeleter deleter = new S3BatchDeleter(client, "bucket", executor, 2);
+        try {
+            deleter.add("key-1");
+            deleter.add("key-2");
+            deleter.await();
+            fail();
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("key-1"));
+            assertTrue(e.getMessage(), e.getMessage().contains("AccessDenied"));
+        }
+    }
+}
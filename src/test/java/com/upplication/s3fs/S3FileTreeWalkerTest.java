@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class S3FileTreeWalkerTest {
+
+    public static final URI S3_GLOBAL_URI = URI.create("s3:///");
+    S3FileSystemProvider provider;
+    FileSystem fsMem;
+
+    @Before
+    public void setup() throws IOException {
+        fsMem = MemoryFileSystemBuilder.newLinux().build("linux");
+        try{
+            FileSystems.getFileSystem(S3_GLOBAL_URI).close();
+        }
+        catch(FileSystemNotFoundException e){}
+
+        provider = spy(new S3FileSystemProvider());
+        doReturn(Files.createDirectory(fsMem.getPath("/" + UUID.randomUUID().toString())))
+                .when(provider).createTempDir();
+        doReturn(new Properties()).when(provider).loadAmazonProperties();
+    }
+
+    @After
+    public void closeMemory() throws IOException{
+        fsMem.close();
+    }
+
+    /**
+     * Records the visit events
+     */
+    static class Recorder extends SimpleFileVisitor<Path> {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            assertTrue(attrs.isDirectory());
+            events.add("pre:" + dir.getFileName());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            events.add("file:" + file.getFileName() + (attrs.isDirectory() ? "/" : ":" + attrs.size()));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            events.add("failed:" + file.getFileName() + ":" + exc.getClass().getSimpleName());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            events.add("post:" + dir.getFileName());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    private AmazonS3ClientMock buildTree() throws IOException {
+        return new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA")
+                .withFile("dir/a.txt", "hello")
+                .withFile("dir/sub/b.txt", "hi")
+                .withFile("dir/sub/deep/c.txt", "x")
+                .withDirectory("dir/empty")
+                .withFile("other/d.txt")
+                .build(provider);
+    }
+
+    @Test
+    public void walkWithASingleListing() throws IOException {
+        AmazonS3ClientMock client = buildTree();
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        Recorder visitor = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), visitor);
+
+        assertEquals(Arrays.asList(
+                "pre:dir",
+                "file:a.txt:5",
+                "pre:empty",
+                "post:empty",
+                "pre:sub",
+                "file:b.txt:2",
+                "pre:deep",
+                "file:c.txt:1",
+                "post:deep",
+                "post:sub",
+                "post:dir"), visitor.events);
+
+        // one request for the start path attributes, then one for the whole tree
+        verify(client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void walkWithMaxDepth() throws IOException {
+        buildTree();
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        Recorder visitor = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), 1, visitor);
+
+        assertEquals(Arrays.asList(
+                "pre:dir",
+                "file:a.txt:5",
+                "file:empty/",
+                "file:sub/",
+                "post:dir"), visitor.events);
+    }
+
+    @Test
+    public void walkSkipSubtreeAndSiblings() throws IOException {
+        buildTree();
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        final List<String> events = new ArrayList<>();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir"), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                events.add("pre:" + dir.getFileName());
+                return dir.getFileName().toString().equals("empty") ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                events.add("file:" + file.getFileName());
+                return file.getFileName().toString().equals("b.txt") ? FileVisitResult.SKIP_SIBLINGS : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                events.add("post:" + dir.getFileName());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        assertEquals(Arrays.asList(
+                "pre:dir",
+                "file:a.txt",
+                "pre:empty",
+                "pre:sub",
+                "file:b.txt",
+                "post:sub",
+                "post:dir"), events);
+    }
+
+    @Test
+    public void walkFile() throws IOException {
+        buildTree();
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        Recorder visitor = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/dir/a.txt"), visitor);
+
+        assertEquals(Arrays.asList("file:a.txt:5"), visitor.events);
+    }
+
+    @Test
+    public void walkMissingPath() throws IOException {
+        buildTree();
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        Recorder visitor = new Recorder();
+        provider.walkFileTree(fileSystem.getPath("/bucketA/missing"), visitor);
+
+        assertEquals(Arrays.asList("failed:missing:" + NoSuchFileException.class.getSimpleName()), visitor.events);
+    }
+
+    private Map<String, ?> buildFakeEnv(){
+        return ImmutableMap.<String, Object> builder()
+                .put(S3FileSystemProvider.ACCESS_KEY, "access key")
+                .put(S3FileSystemProvider.SECRET_KEY, "secret key").build();
+    }
+}
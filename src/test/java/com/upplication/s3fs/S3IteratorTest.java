@@ -45,7 +45,10 @@
 package com.upplication.s3fs;
 
 
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.github.marschall.memoryfilesystem.MemoryFileSystemBuilder;
+import com.upplication.s3fs.util.AmazonS3ClientMock;
+import com.upplication.s3fs.util.S3ListOptions;
 import com.google.common.collect.ImmutableMap;
 import org.junit.After;
 import org.junit.Before;
@@ -57,7 +60,12 @@ import java.nio.file.*;
 import java.util.*;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atMost;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.spy;
 
 public class S3IteratorTest {
@@ -246,6 +254,60 @@ public class S3IteratorTest {
         assertIterator(iterator, filesNameExpected);
     }
 
+    @Test
+    public void iteratorReturnsFirstPageBeforeListingTheNextOnes() throws IOException {
+        AmazonS3ClientMockBuilder builder =new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA");
+        for (int i = 0; i < 2050; i++){
+            builder.withFile(String.format("file-%04d", i));
+        }
+        AmazonS3ClientMock client = builder.build(provider);
+
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        S3Iterator iterator = new S3Iterator((S3FileSystem)fileSystem, "bucketA", "/", new S3ListOptions().setMaxShards(1));
+        verify(client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+
+        assertTrue(iterator.next().getFileName().toString().startsWith("file-"));
+        // the first page and at most the next one fetched ahead
+        verify(client, atMost(2)).listObjectsV2(any(ListObjectsV2Request.class));
+
+        int count = 1;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        assertEquals(2050, count);
+        verify(client, times(3)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void iteratorListsKeyRangesConcurrently() throws IOException {
+        AmazonS3ClientMockBuilder builder =new AmazonS3ClientMockBuilder(fsMem)
+                .withBucket("bucketA");
+        String filesNameExpected[] = new String[3500];
+        for (int i = 0; i < filesNameExpected.length; i++){
+            filesNameExpected[i] = String.format("file-%04d", i);
+            builder.withFile(filesNameExpected[i]);
+        }
+        AmazonS3ClientMock client = builder.build(provider);
+
+        FileSystem fileSystem = provider.newFileSystem(S3_GLOBAL_URI, buildFakeEnv());
+
+        S3Iterator iterator = new S3Iterator((S3FileSystem)fileSystem, "bucketA", "/", new S3ListOptions().setMaxShards(4));
+
+        // the elements are returned once and in the same order of a sequential listing
+        List<String> filesNameActual = new ArrayList<>();
+        while (iterator.hasNext()) {
+            filesNameActual.add(iterator.next().getFileName().toString());
+        }
+        assertEquals(Arrays.asList(filesNameExpected), filesNameActual);
+        // the first page, then 3 pages for the range `file-1000` to `file-2999` (the last one
+        // crossing the range boundary) and a single page for each of the other 3 ranges
+        verify(client, times(7)).listObjectsV2(any(ListObjectsV2Request.class));
+        iterator.close();
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void remove() throws IOException {
         new AmazonS3ClientMockBuilder(fsMem)
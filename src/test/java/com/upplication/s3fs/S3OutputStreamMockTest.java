@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.Base64;
+import com.upplication.s3fs.util.ByteBufferPool;
+import com.upplication.s3fs.util.S3UploadRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Verifies the {@link S3OutputStream} upload logic against a mocked S3 client
+ */
+public class S3OutputStreamMockTest {
+
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    private AmazonS3 s3;
+
+    /**
+     * The uploaded parts indexed by the part number, a single-part upload is stored as part 0
+     */
+    private Map<Integer, byte[]> parts;
+
+    /**
+     * The number of parts uploaded from a spill file
+     */
+    private AtomicInteger spilledParts;
+
+    @Before
+    public void setup() {
+        parts = new TreeMap<>();
+        spilledParts = new AtomicInteger();
+        s3 = mock(AmazonS3.class);
+
+        doAnswer(new Answer<InitiateMultipartUploadResult>() {
+            @Override
+            public InitiateMultipartUploadResult answer(InvocationOnMock invocation) {
+                InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+                result.setUploadId("upload-1");
+                return result;
+            }
+        }).when(s3).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+
+        doAnswer(new Answer<UploadPartResult>() {
+            @Override
+            public UploadPartResult answer(InvocationOnMock invocation) throws Throwable {
+                UploadPartRequest req = (UploadPartRequest) invocation.getArguments()[0];
+                byte[] data = req.getFile() != null
+                        ? readFile(req.getFile(), req.getFileOffset(), (int) req.getPartSize())
+                        : readAll(req.getInputStream());
+                assertEquals(req.getPartSize(), data.length);
+                assertEquals(md5(data), req.getMd5Digest());
+                store(req.getPartNumber(), data);
+                if( req.getFile() != null )
+                    spilledParts.incrementAndGet();
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(req.getPartNumber());
+                result.setETag("etag-" + req.getPartNumber());
+                return result;
+            }
+        }).when(s3).uploadPart(any(UploadPartRequest.class));
+
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                PutObjectRequest req = (PutObjectRequest) invocation.getArguments()[0];
+                byte[] data = readAll(req.getInputStream());
+                assertEquals(req.getMetadata().getContentMD5(), md5(data));
+                store(0, data);
+                return null;
+            }
+        }).when(s3).putObject(any(PutObjectRequest.class));
+    }
+
+    @After
+    public void cleanup() {
+        S3OutputStream.shutdownExecutor();
+    }
+
+    private synchronized void store(int part, byte[] data) {
+        parts.put(part, data);
+    }
+
+    private synchronized byte[] uploaded() {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for( byte[] it : parts.values() )
+            result.write(it, 0, it.length);
+        return result.toByteArray();
+    }
+
+    private S3OutputStream create() {
+        S3UploadRequest req = new S3UploadRequest()
+                .setChunkSize(CHUNK_SIZE)
+                .setObjectId(new S3ObjectId("bucket", "key"));
+        return new S3OutputStream(s3, req);
+    }
+
+    static byte[] readAll(InputStream stream) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while( (n=stream.read(buf)) != -1 )
+            result.write(buf, 0, n);
+        return result.toByteArray();
+    }
+
+    static byte[] readFile(File file, long offset, int len) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] result = new byte[len];
+            raf.seek(offset);
+            raf.readFully(result);
+            return result;
+        }
+    }
+
+    static String md5(byte[] data) throws Exception {
+        return Base64.encodeAsString(MessageDigest.getInstance("MD5").digest(data));
+    }
+
+    static byte[] randomBytes(int length) {
+        byte[] result = new byte[length];
+        new Random().nextBytes(result);
+        return result;
+    }
+
+    @Test
+    public void bulkWriteSinglePart() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE / 2);
+
+        S3OutputStream out = create();
+        out.write(payload, 0, 100);
+        out.write(payload, 100, payload.length - 100);
+        out.close();
+
+        assertArrayEquals(payload, uploaded());
+        assertEquals(0, out.getPartsCount());
+        verify(s3, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void bulkWriteSplitsAtChunkBoundaries() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE * 3 + 123);
+
+        S3OutputStream out = create();
+        out.write(payload);
+        out.close();
+
+        assertEquals(4, out.getPartsCount());
+        assertEquals(CHUNK_SIZE, parts.get(1).length);
+        assertEquals(CHUNK_SIZE, parts.get(2).length);
+        assertEquals(CHUNK_SIZE, parts.get(3).length);
+        assertEquals(123, parts.get(4).length);
+        assertArrayEquals(payload, uploaded());
+        verify(s3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void mixedWrites() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE * 2 + 7);
+
+        S3OutputStream out = create();
+        int i = 0;
+        while( i < payload.length ) {
+            out.write(payload[i++]);
+            int len = Math.min(1000, payload.length - i);
+            out.write(payload, i, len);
+            i += len;
+            len = Math.min(555, payload.length - i);
+            ByteBuffer direct = ByteBuffer.allocateDirect(len);
+            direct.put(payload, i, len).flip();
+            out.write(direct);
+            assertEquals(0, direct.remaining());
+            i += len;
+        }
+        out.close();
+
+        assertEquals(3, out.getPartsCount());
+        assertArrayEquals(payload, uploaded());
+    }
+
+    @Test
+    public void uploadWithinMemoryBudget() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE * 5);
+
+        S3UploadRequest req = new S3UploadRequest()
+                .setChunkSize(CHUNK_SIZE)
+                .setBufferMemory(CHUNK_SIZE)
+                .setObjectId(new S3ObjectId("bucket", "key"));
+        S3OutputStream out = new S3OutputStream(s3, req);
+        out.write(payload);
+        out.close();
+
+        assertEquals(5, out.getPartsCount());
+        assertArrayEquals(payload, uploaded());
+        assertEquals(CHUNK_SIZE, S3OutputStream.getOrCreateBufferPool(0).getAllocated());
+    }
+
+    @Test
+    public void rampUpBuffersAreNotRecycled() throws Exception {
+        final int _1MB = 1024 * 1024;
+        // parts of 5 MB (heap buffer), 10 MB (ramp-up) and 12 MB (chunk size)
+        byte[] payload = randomBytes(15 * _1MB + 1);
+
+        S3UploadRequest req = new S3UploadRequest()
+                .setChunkSize(12 * _1MB)
+                .setObjectId(new S3ObjectId("bucket", "key"));
+        S3OutputStream out = new S3OutputStream(s3, req);
+        out.write(payload);
+        out.close();
+
+        assertEquals(3, out.getPartsCount());
+        assertArrayEquals(payload, uploaded());
+        // only the chunk size buffer is kept for recycling
+        ByteBufferPool pool = S3OutputStream.getOrCreateBufferPool(0);
+        assertEquals(0, pool.getInUse());
+        assertEquals(12 * _1MB, pool.getAllocated());
+    }
+
+    @Test(timeout = 10_000)
+    public void singleThreadWritingManyStreamsDoesNotHang() throws Exception {
+        // the budget allows a single part buffer, held by the first stream
+        List<S3OutputStream> streams = new ArrayList<>();
+        for( int i=0; i<3; i++ ) {
+            S3UploadRequest req = new S3UploadRequest()
+                    .setChunkSize(CHUNK_SIZE)
+                    .setBufferMemory(CHUNK_SIZE)
+                    .setBufferWait(100)
+                    .setObjectId(new S3ObjectId("bucket", "key-" + i));
+            S3OutputStream out = new S3OutputStream(s3, req);
+            out.write(randomBytes(CHUNK_SIZE * 2 + 1));
+            streams.add(out);
+        }
+
+        for( S3OutputStream out : streams ) {
+            out.close();
+            assertEquals(3, out.getPartsCount());
+        }
+        verify(s3, times(3)).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void spillPartsWhenMemoryIsExhausted() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE * 4 + 10);
+        Path spillDir = Files.createTempDirectory("spill");
+
+        // exhaust the shared buffer pool
+        ByteBufferPool pool = S3OutputStream.getOrCreateBufferPool(1);
+        ByteBuffer holder = pool.acquire(1);
+
+        S3UploadRequest req = new S3UploadRequest()
+                .setChunkSize(CHUNK_SIZE)
+                .setSpillDir(spillDir)
+                .setObjectId(new S3ObjectId("bucket", "key"));
+        S3OutputStream out = new S3OutputStream(s3, req);
+        out.write(payload);
+        out.close();
+        pool.release(holder);
+
+        assertEquals(5, out.getPartsCount());
+        // the first part is never spilled since it is held by a heap buffer
+        assertEquals(4, spilledParts.get());
+        assertArrayEquals(payload, uploaded());
+        // the spill file is deleted on close
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDir)) {
+            assertFalse(stream.iterator().hasNext());
+        }
+        Files.delete(spillDir);
+    }
+
+    @Test
+    public void closeAsync() throws Exception {
+        byte[] payload = randomBytes(CHUNK_SIZE * 2 + 1);
+
+        S3OutputStream out = create();
+        out.write(payload);
+        Future<Void> future = out.closeAsync();
+        assertSame(future, out.closeAsync());
+
+        S3OutputStream.awaitPendingUploads();
+        assertTrue(future.isDone());
+        future.get();
+        // closing again is a no-op
+        out.close();
+
+        assertEquals(3, out.getPartsCount());
+        assertArrayEquals(payload, uploaded());
+        verify(s3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void closeAsyncFailure() throws Exception {
+        doThrow(new AmazonClientException("Boom")).when(s3).putObject(any(PutObjectRequest.class));
+
+        S3OutputStream out = create();
+        out.write(new byte[]{1, 2, 3});
+        Future<Void> future = out.closeAsync();
+
+        try {
+            S3OutputStream.awaitPendingUploads();
+            fail("Upload failure should be reported");
+        }
+        catch (IOException e) {
+            assertEquals("Failed to put data into Amazon S3 object", e.getMessage());
+        }
+
+        try {
+            future.get();
+            fail("Upload failure should be reported");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void closeAsyncFailureBeforeAwait() throws Exception {
+        doThrow(new AmazonClientException("Boom")).when(s3).putObject(any(PutObjectRequest.class));
+
+        S3OutputStream out = create();
+        out.write(new byte[]{1, 2, 3});
+        Future<Void> future = out.closeAsync();
+        // the close fails before the barrier is reached, without being observed
+        while( !future.isDone() )
+            Thread.sleep(10);
+
+        try {
+            S3OutputStream.awaitPendingUploads();
+            fail("Upload failure should be reported by the barrier");
+        }
+        catch (IOException e) {
+            assertEquals("Failed to put data into Amazon S3 object", e.getMessage());
+        }
+        // the failure is reported only once
+        S3OutputStream.awaitPendingUploads();
+    }
+
+    @Test
+    public void closeAsyncFailureObservedIsNotReportedAgain() throws Exception {
+        doThrow(new AmazonClientException("Boom")).when(s3).putObject(any(PutObjectRequest.class));
+
+        S3OutputStream out = create();
+        out.write(new byte[]{1, 2, 3});
+        Future<Void> future = out.closeAsync();
+        try {
+            future.get();
+            fail("Upload failure should be reported");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        // the failure has already been seen by the caller
+        S3OutputStream.awaitPendingUploads();
+    }
+
+    @Test
+    public void partFailureIsReportedToTheWriter() throws Exception {
+        doThrow(new AmazonClientException("Boom")).when(s3).uploadPart(any(UploadPartRequest.class));
+
+        S3UploadRequest req = new S3UploadRequest()
+                .setChunkSize(CHUNK_SIZE)
+                .setMaxAttempts(1)
+                .setObjectId(new S3ObjectId("bucket", "key"));
+        S3OutputStream out = new S3OutputStream(s3, req);
+        out.write(randomBytes(CHUNK_SIZE + 1));
+        verify(s3, timeout(5000)).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+
+        try {
+            out.write(randomBytes(10));
+            fail("Upload failure should be reported on write");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Upload of Amazon S3 object"));
+        }
+
+        try {
+            out.close();
+            fail("Upload failure should be reported on close");
+        }
+        catch (IOException e) {
+            assertEquals("Failed to upload multipart data to Amazon S3", e.getCause().getMessage());
+        }
+        verify(s3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        // once closed the stream does not report the error again
+        out.close();
+    }
+
+    @Test
+    public void adaptivePartSize() {
+        final int _1MB = 1024 * 1024;
+        // ramp up to the chunk size
+        assertEquals(5 * _1MB, S3OutputStream.partSize(100 * _1MB, 1));
+        assertEquals(10 * _1MB, S3OutputStream.partSize(100 * _1MB, 2));
+        assertEquals(80 * _1MB, S3OutputStream.partSize(100 * _1MB, 5));
+        assertEquals(100 * _1MB, S3OutputStream.partSize(100 * _1MB, 6));
+        assertEquals(100 * _1MB, S3OutputStream.partSize(100 * _1MB, 1000));
+        // then doubled every 1000 parts
+        assertEquals(200 * _1MB, S3OutputStream.partSize(100 * _1MB, 1001));
+        assertEquals(800 * _1MB, S3OutputStream.partSize(100 * _1MB, 3001));
+        assertEquals(1024 * _1MB, S3OutputStream.partSize(100 * _1MB, 9999));
+        // small chunks are used as they are
+        assertEquals(CHUNK_SIZE, S3OutputStream.partSize(CHUNK_SIZE, 1));
+        assertEquals(2 * CHUNK_SIZE, S3OutputStream.partSize(CHUNK_SIZE, 1500));
+
+        // with the default chunk size any object up to the S3 max size (5 TB) fits in 10,000 parts
+        long total = 0;
+        for( int i=1; i<=10000; i++ )
+            total += S3OutputStream.partSize(100 * _1MB, i);
+        assertTrue(total > 5L * 1024 * 1024 * _1MB);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void bulkWriteInvalidRange() throws Exception {
+        create().write(new byte[10], 5, 6);
+    }
+}
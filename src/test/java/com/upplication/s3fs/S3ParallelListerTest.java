@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.util.S3ListOptions;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class S3ParallelListerTest {
+
+    @Test
+    public void boundariesFollowTheCommonPrefix() {
+        // the page spans `file-0000` to `file-0999`, the next keys are expected under `file-1`, `file-2`, etc
+        assertEquals(Arrays.asList("file-3", "file-5", "file-7"),
+                S3ParallelLister.boundaries("", null, "file-0000", "file-0999", 4));
+
+        assertEquals(Arrays.asList("dir/Q", "dir/V"),
+                S3ParallelLister.boundaries("dir/", "/", "dir/A/", "dir/K/", 3));
+    }
+
+    @Test
+    public void boundariesWhenTheClassIsExhausted() {
+        // no digit follows `9`, so the boundaries are taken among any greater character
+        assertEquals(Arrays.asList("x-R", "x-i"),
+                S3ParallelLister.boundaries("", null, "x-900", "x-999", 3));
+    }
+
+    @Test
+    public void noBoundaries() {
+        // sequential listing
+        assertEquals(Collections.emptyList(), S3ParallelLister.boundaries("", null, "a", "z", 1));
+        // nothing follows `z`
+        assertEquals(Collections.emptyList(), S3ParallelLister.boundaries("", null, "a", "z", 8));
+        // empty page
+        assertEquals(Collections.emptyList(), S3ParallelLister.boundaries("dir/", "/", null, null, 8));
+    }
+
+    @After
+    public void cleanup() {
+        S3ParallelLister.shutdownExecutor();
+    }
+
+    /**
+     * @return A client listing an endless sequence of truncated pages
+     */
+    private static AmazonS3Client endlessListing() {
+        AmazonS3Client client = mock(AmazonS3Client.class);
+        when(client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(new Answer<ListObjectsV2Result>() {
+            @Override
+            public ListObjectsV2Result answer(InvocationOnMock invocation) {
+                ListObjectsV2Result result = new ListObjectsV2Result();
+                for( int i=0; i<10; i++ ) {
+                    S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setKey("file-000" + i);
+                    result.getObjectSummaries().add(summary);
+                }
+                result.setTruncated(true);
+                result.setNextContinuationToken("next");
+                return result;
+            }
+        });
+        return client;
+    }
+
+    private static boolean awaitIdleShards(boolean collect) throws InterruptedException {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) S3ParallelLister.getOrCreateExecutor();
+        for( int i=0; i<100; i++ ) {
+            if( executor.getActiveCount() == 0 )
+                return true;
+            if( collect )
+                System.gc();
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    @Test
+    public void closedListerStopsShards() throws Exception {
+        S3ParallelLister lister = new S3ParallelLister(endlessListing(), new ListObjectsV2Request().withBucketName("bucket"), new S3ListOptions().setMaxShards(4).setPrefetchPages(4));
+        lister.next();
+        lister.next();
+        lister.close();
+        assertTrue(awaitIdleShards(false));
+    }
+
+    @Test
+    public void abandonedListerStopsShards() throws Exception {
+        S3ParallelLister lister = new S3ParallelLister(endlessListing(), new ListObjectsV2Request().withBucketName("bucket"), new S3ListOptions().setMaxShards(4).setPrefetchPages(4));
+        lister.next();
+        lister.next();
+        assertTrue(((ThreadPoolExecutor) S3ParallelLister.getOrCreateExecutor()).getActiveCount() > 0);
+        // the consumer stops iterating without closing the lister
+        lister = null;
+        assertTrue(awaitIdleShards(true));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.amazonaws.services.s3.model.S3ObjectId;
+import com.upplication.s3fs.util.S3DownloadOptions;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class S3SeekableByteChannelTest {
+
+    private static final int SIZE = 64 * 1024;
+
+    private final byte[] content = content();
+
+    private static byte[] content() {
+        byte[] result = new byte[SIZE];
+        for( int i=0; i<SIZE; i++ )
+            result[i] = (byte) i;
+        return result;
+    }
+
+    private S3SeekableByteChannel create(S3DownloadOptions opts) throws IOException {
+        AmazonS3Client client = mock(AmazonS3Client.class);
+        when(client.getObjectRange(any(S3ObjectId.class), anyLong(), anyLong(), anyString(), any(S3DownloadOptions.class))).thenAnswer(new Answer<byte[]>() {
+            @Override
+            public byte[] answer(InvocationOnMock invocation) {
+                long start = (Long) invocation.getArguments()[1];
+                long end = (Long) invocation.getArguments()[2];
+                return Arrays.copyOfRange(content, (int) start, (int) end + 1);
+            }
+        });
+        return new S3SeekableByteChannel(client, new S3ObjectId("bucket", "key"), SIZE, "etag", opts);
+    }
+
+    @Test
+    public void readRandomAccess() throws IOException {
+        S3SeekableByteChannel channel = create(new S3DownloadOptions().setBlockSize(1024));
+        ByteBuffer buffer = ByteBuffer.allocate(100);
+        channel.position(1000);
+        assertEquals(100, channel.read(buffer));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 1100), buffer.array());
+        assertEquals(1100, channel.position());
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        final S3SeekableByteChannel channel = create(new S3DownloadOptions().setBlockSize(1024).setBlockCacheSize(4 * 1024));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for( int i=0; i<8; i++ ) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int total = 0;
+                        int count;
+                        ByteBuffer buffer = ByteBuffer.allocate(100);
+                        while( (count = channel.read(buffer)) != -1 ) {
+                            total += count;
+                            buffer.clear();
+                        }
+                        return total;
+                    }
+                }));
+            }
+
+            // the readers share the channel position, thus each byte is read once
+            int total = 0;
+            for( Future<Integer> it : results )
+                total += it.get();
+            assertEquals(SIZE, total);
+            assertEquals(SIZE, channel.position());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blockCacheIsNotTheStreamBuffer() {
+        S3DownloadOptions opts = new S3DownloadOptions();
+        assertEquals(S3DownloadOptions.DEFAULT_BLOCK_CACHE_SIZE / S3DownloadOptions.DEFAULT_BLOCK_SIZE, opts.getBlockCacheCount());
+        assertEquals(8, opts.setBlockSize(1024).setBlockCacheSize(8 * 1024).getBlockCacheCount());
+    }
+}
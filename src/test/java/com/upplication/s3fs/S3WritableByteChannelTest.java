@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class S3WritableByteChannelTest {
+
+    @Test
+    public void writeSequential() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S3WritableByteChannel channel = new S3WritableByteChannel(out, "/bucket/file");
+
+        assertEquals(5, channel.write(ByteBuffer.wrap("hello".getBytes())));
+        ByteBuffer direct = ByteBuffer.allocateDirect(6);
+        direct.put(" world".getBytes()).flip();
+        assertEquals(6, channel.write(direct));
+        assertEquals(11, channel.position());
+        assertEquals(11, channel.size());
+
+        channel.close();
+        assertFalse(channel.isOpen());
+        assertEquals("hello world", new String(out.toByteArray()));
+    }
+
+    @Test
+    public void writeSlice() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S3WritableByteChannel channel = new S3WritableByteChannel(out, "/bucket/file");
+
+        ByteBuffer buffer = ByteBuffer.wrap("xxhelloxx".getBytes(), 2, 5).slice();
+        channel.write(buffer);
+        channel.close();
+
+        assertEquals(0, buffer.remaining());
+        assertEquals("hello", new String(out.toByteArray()));
+    }
+
+    @Test
+    public void forwardPositionFillsWithZeros() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        S3WritableByteChannel channel = new S3WritableByteChannel(out, "/bucket/file");
+
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2}));
+        channel.position(5);
+        channel.write(ByteBuffer.wrap(new byte[]{3}));
+        channel.truncate(10);
+        channel.close();
+
+        assertArrayEquals(new byte[]{1, 2, 0, 0, 0, 3}, out.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void backwardPositionNotAllowed() throws IOException {
+        S3WritableByteChannel channel = new S3WritableByteChannel(new ByteArrayOutputStream(), "/bucket/file");
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        channel.position(1);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncateNotAllowed() throws IOException {
+        S3WritableByteChannel channel = new S3WritableByteChannel(new ByteArrayOutputStream(), "/bucket/file");
+        channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        channel.truncate(1);
+    }
+
+    @Test(expected = NonReadableChannelException.class)
+    public void readNotAllowed() throws IOException {
+        S3WritableByteChannel channel = new S3WritableByteChannel(new ByteArrayOutputStream(), "/bucket/file");
+        channel.read(ByteBuffer.allocate(1));
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void writeAfterClose() throws IOException {
+        S3WritableByteChannel channel = new S3WritableByteChannel(new ByteArrayOutputStream(), "/bucket/file");
+        channel.close();
+        channel.write(ByteBuffer.wrap(new byte[]{1}));
+    }
+}
@@ -63,6 +63,7 @@ package com.upplication.s3fs.util;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.Headers;
 import com.amazonaws.services.s3.model.*;
 import com.upplication.s3fs.AmazonS3Client;
 
@@ -135,106 +136,129 @@ public class AmazonS3ClientMock extends AmazonS3Client {
 	}
 
     /**
-     * list all objects without and return ObjectListing with all elements
-     * and with truncated to false
+     * list the objects in lexicographical order honouring the request prefix, marker,
+     * delimiter and max keys, the same way amazon s3 does
      */
 	@Override
 	public ObjectListing listObjects(ListObjectsRequest listObjectsRequest)
 			throws AmazonClientException {
 
-        ObjectListing objectListing = new ObjectListing();
-        objectListing.setBucketName(listObjectsRequest.getBucketName());
-        objectListing.setPrefix(listObjectsRequest.getPrefix());
-        objectListing.setMarker(listObjectsRequest.getMarker());
-        objectListing.setDelimiter(listObjectsRequest.getDelimiter());
-
-		Bucket bucket = find(listObjectsRequest.getBucketName());
-        Iterator<S3Element> iterator = objects.get(bucket).iterator();
-
-        int i = 0;
-
-        while(iterator.hasNext()){
-
-            S3Element elem = iterator.next();
-
-            // TODO. add delimiter and marker support
-            if (listObjectsRequest.getPrefix() != null
-                    && elem.getS3Object().getKey()
-                    .startsWith(listObjectsRequest.getPrefix())) {
-
-                S3ObjectSummary s3ObjectSummary = parseToS3ObjectSummary(elem);
-                objectListing.getObjectSummaries().add(s3ObjectSummary);
-
-                if (i + 1 == LIMIT_AWS_MAX_ELEMENTS && iterator.hasNext()){
-                    objectListing.setTruncated(true);
-                    objectListing.setNextMarker(iterator.next().getS3Object().getKey());
-                    return objectListing;
-                }
-                else {
-                    objectListing.setTruncated(false);
-                }
-
-                i++;
-            }
-
-        }
-
-		return objectListing;
+        return list(listObjectsRequest.getBucketName(),
+                listObjectsRequest.getPrefix(),
+                listObjectsRequest.getMarker(),
+                listObjectsRequest.getDelimiter(),
+                listObjectsRequest.getMaxKeys());
 	}
 
     @Override
     public ObjectListing listNextBatchOfObjects(ObjectListing previousObjectListing) {
 
-
-        ObjectListing objectListing = new ObjectListing();
-        objectListing.setBucketName(previousObjectListing.getBucketName());
-        objectListing.setPrefix(previousObjectListing.getPrefix());
-        objectListing.setMarker(previousObjectListing.getMarker());
-        objectListing.setDelimiter(previousObjectListing.getDelimiter());
-
         if (!previousObjectListing.isTruncated() ||
                 previousObjectListing.getNextMarker() == null){
+            ObjectListing objectListing = new ObjectListing();
+            objectListing.setBucketName(previousObjectListing.getBucketName());
+            objectListing.setPrefix(previousObjectListing.getPrefix());
+            objectListing.setMarker(previousObjectListing.getMarker());
+            objectListing.setDelimiter(previousObjectListing.getDelimiter());
             return objectListing;
         }
 
-        Bucket bucket = find(previousObjectListing.getBucketName());
-        Iterator<S3Element> iterator = objects.get(bucket).iterator();
+        return list(previousObjectListing.getBucketName(),
+                previousObjectListing.getPrefix(),
+                previousObjectListing.getNextMarker(),
+                previousObjectListing.getDelimiter(),
+                previousObjectListing.getMaxKeys());
+    }
 
-        int i = 0;
-        boolean continueElement = false;
+    /**
+     * the continuation token is the last key (or common prefix) returned
+     */
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+
+        String token = request.getContinuationToken();
+        ObjectListing listing = list(request.getBucketName(),
+                request.getPrefix(),
+                token != null ? token : request.getStartAfter(),
+                request.getDelimiter(),
+                request.getMaxKeys());
+
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        result.setBucketName(request.getBucketName());
+        result.setPrefix(request.getPrefix());
+        result.setDelimiter(request.getDelimiter());
+        result.setStartAfter(request.getStartAfter());
+        result.setContinuationToken(token);
+        result.setMaxKeys(listing.getMaxKeys());
+        result.setTruncated(listing.isTruncated());
+        result.setNextContinuationToken(listing.isTruncated() ? listing.getNextMarker() : null);
+        result.getObjectSummaries().addAll(listing.getObjectSummaries());
+        result.setCommonPrefixes(listing.getCommonPrefixes());
+        result.setKeyCount(listing.getObjectSummaries().size() + listing.getCommonPrefixes().size());
+        if (!request.isFetchOwner()) {
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                summary.setOwner(null);
+            }
+        }
+        return result;
+    }
 
-        while (iterator.hasNext()) {
+    private synchronized ObjectListing list(String bucketName, String prefix, String marker, String delimiter, Integer maxKeys) {
 
-            S3Element elem = iterator.next();
+        ObjectListing objectListing = new ObjectListing();
+        objectListing.setBucketName(bucketName);
+        objectListing.setPrefix(prefix);
+        objectListing.setMarker(marker);
+        objectListing.setDelimiter(delimiter);
+        objectListing.setMaxKeys(maxKeys != null && maxKeys > 0 ? maxKeys : LIMIT_AWS_MAX_ELEMENTS);
+
+        // keys are returned in lexicographical order
+        TreeMap<String, S3Element> sorted = new TreeMap<>();
+        for (S3Element elem : objects.get(find(bucketName))) {
+            sorted.put(elem.getS3Object().getKey(), elem);
+        }
 
-            if (!continueElement &&
-                    elem.getS3Object().getKey().equals(previousObjectListing.getNextMarker())){
-                continueElement = true;
+        final String base = prefix != null ? prefix : "";
+        final int max = objectListing.getMaxKeys();
+        int count = 0;
+        String last = null;
+        for (S3Element elem : (marker != null ? sorted.tailMap(marker, false) : sorted).values()) {
+
+            String key = elem.getS3Object().getKey();
+            if (!key.startsWith(base)) {
+                continue;
             }
 
-            if (continueElement) {
-                // TODO. add delimiter and marker support
-                if (previousObjectListing.getPrefix() != null
-                        && elem.getS3Object().getKey()
-                        .startsWith(previousObjectListing.getPrefix())) {
-
-                    S3ObjectSummary s3ObjectSummary = parseToS3ObjectSummary(elem);
-                    objectListing.getObjectSummaries().add(s3ObjectSummary);
-                    // max 1000 elements at same time.
-                    if (i + 1 == LIMIT_AWS_MAX_ELEMENTS && iterator.hasNext()){
-                        objectListing.setTruncated(true);
-                        objectListing.setNextMarker(iterator.next().getS3Object().getKey());
-                        return objectListing;
-                    }
-                    else {
-                        objectListing.setTruncated(false);
+            // roll up the keys containing the delimiter after the prefix
+            String common = null;
+            if (delimiter != null && !delimiter.isEmpty()) {
+                int p = key.indexOf(delimiter, base.length());
+                if (p != -1) {
+                    common = key.substring(0, p + delimiter.length());
+                    if (common.equals(last) || (marker != null && marker.startsWith(common))) {
+                        continue;
                     }
-
-                    i++;
                 }
             }
+
+            if (count == max) {
+                objectListing.setTruncated(true);
+                objectListing.setNextMarker(last);
+                return objectListing;
+            }
+
+            if (common != null) {
+                objectListing.getCommonPrefixes().add(common);
+                last = common;
+            }
+            else {
+                objectListing.getObjectSummaries().add(parseToS3ObjectSummary(elem));
+                last = key;
+            }
+            count++;
         }
 
+        objectListing.setTruncated(false);
         return objectListing;
     }
 
@@ -311,11 +335,65 @@ public class AmazonS3ClientMock extends AmazonS3Client {
         }
 	}
 
+	@Override
+	public S3Object getObject(GetObjectRequest request) {
+
+		S3Element result = find(request.getBucketName(), request.getKey());
+
+		if (result == null){
+			AmazonS3Exception amazonS3Exception = new AmazonS3Exception("not found with key: " + request.getKey());
+			amazonS3Exception.setStatusCode(404);
+			throw amazonS3Exception;
+		}
+
+		S3Object object = result.getS3Object();
+		if (object.getObjectContent() == null || request.getRange() == null) {
+			return object;
+		}
+
+		byte[] content = readContent(object);
+		long start = request.getRange()[0];
+		long end = Math.min(request.getRange()[1], content.length - 1);
+		if (start >= content.length) {
+			AmazonS3Exception amazonS3Exception = new AmazonS3Exception("range not satisfiable for key: " + request.getKey());
+			amazonS3Exception.setStatusCode(416);
+			throw amazonS3Exception;
+		}
+
+		ObjectMetadata metadata = object.getObjectMetadata().clone();
+		metadata.setContentLength(end - start + 1);
+		metadata.setHeader(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + content.length);
+
+		S3Object range = new S3Object();
+		range.setBucketName(object.getBucketName());
+		range.setKey(object.getKey());
+		range.setObjectMetadata(metadata);
+		range.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(content, (int) start, (int) end + 1)));
+		return range;
+	}
+
+	/**
+	 * read the whole content of the object, leaving the content stream ready to be read again
+	 */
+	private byte[] readContent(S3Object object) {
+		try {
+			InputStream stream = object.getObjectContent();
+			stream.reset();
+			byte[] result = IOUtils.toByteArray(stream);
+			stream.reset();
+			return result;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("the stream is closed", e);
+		}
+	}
+
 	@Override
 	public ObjectMetadata getObjectMetadata(String bucketName, String key)  {
 		S3Element result = find(bucketName, key);
 
-		if (result == null){
+		// as amazon s3 the key must match exactly, a directory is found only with the trailing slash
+		if (result == null || !result.getS3Object().getKey().equals(key)){
 			AmazonS3Exception amazonS3Exception = new AmazonS3Exception("not found with key: " + key);
 			amazonS3Exception.setStatusCode(404);
 			throw amazonS3Exception;
@@ -325,6 +403,11 @@ public class AmazonS3ClientMock extends AmazonS3Client {
 		}
 	}
 
+	@Override
+	public void uploadFile(File file, S3UploadRequest request) throws IOException {
+		putObject(request.getObjectId().getBucket(), request.getObjectId().getKey(), file);
+	}
+
 	@Override
 	public PutObjectResult putObject(String bucketName, String key, File file)
 			throws AmazonClientException {
@@ -371,7 +454,13 @@ public class AmazonS3ClientMock extends AmazonS3Client {
     }
 
     @Override
-	public CopyObjectResult copyObject(String sourceBucketName,
+	public CopyObjectResult copyObject(CopyObjectRequest request) {
+		return copyObject(request.getSourceBucketName(), request.getSourceKey(),
+				request.getDestinationBucketName(), request.getDestinationKey());
+	}
+
+    @Override
+	public synchronized CopyObjectResult copyObject(String sourceBucketName,
 			String sourceKey, String destinationBucketName,
 			String destinationKey) throws AmazonClientException {
 
@@ -406,12 +495,30 @@ public class AmazonS3ClientMock extends AmazonS3Client {
 	@Override
 	public void deleteObject(String bucketName, String key)
 			throws AmazonClientException {
+		remove(bucketName, key);
+	}
+
+	// note: synchronized since the objects can be deleted in parallel while listing
+	private synchronized void remove(String bucketName, String key) {
 		S3Element res = find(bucketName, key);
 		if (res != null) {
 			objects.get(find(bucketName)).remove(res);
 		}
 	}
 	
+	@Override
+	public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request)
+			throws AmazonClientException {
+		List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+		for (DeleteObjectsRequest.KeyVersion key : request.getKeys()) {
+			remove(request.getBucketName(), key.getKey());
+			DeleteObjectsResult.DeletedObject item = new DeleteObjectsResult.DeletedObject();
+			item.setKey(key.getKey());
+			deleted.add(item);
+		}
+		return new DeleteObjectsResult(deleted);
+	}
+
 	private S3Element parse(InputStream stream, String bucket, String key) {
 		
 		S3Object object = new S3Object();
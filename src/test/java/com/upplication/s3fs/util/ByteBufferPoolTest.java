@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ByteBufferPoolTest {
+
+    @Test
+    public void recycleBuffers() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(0);
+        ByteBuffer first = pool.acquire(100);
+        first.put((byte) 1);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(100);
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(100, pool.getAllocated());
+        assertEquals(100, pool.getInUse());
+    }
+
+    @Test
+    public void budgetExhausted() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(250);
+        ByteBuffer a = pool.acquire(100);
+        ByteBuffer b = pool.acquire(100);
+        assertNull(pool.tryAcquire(100));
+
+        pool.release(a);
+        assertSame(a, pool.tryAcquire(100));
+        assertNotNull(b);
+        assertEquals(200, pool.getAllocated());
+    }
+
+    @Test
+    public void acquireWaitsForRelease() throws Exception {
+        final ByteBufferPool pool = new ByteBufferPool(100);
+        final ByteBuffer first = pool.acquire(100);
+        final AtomicReference<ByteBuffer> result = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread writer = new Thread() {
+            public void run() {
+                try {
+                    result.set(pool.acquire(100));
+                    done.countDown();
+                }
+                catch (InterruptedException e) {
+                    // ignore it
+                }
+            }
+        };
+        writer.start();
+
+        assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+        pool.release(first);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertSame(first, result.get());
+    }
+
+    @Test
+    public void acquireTimesOut() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(100);
+        ByteBuffer first = pool.acquire(100, 100, TimeUnit.MILLISECONDS);
+        assertNotNull(first);
+        assertNull(pool.acquire(100, 100, TimeUnit.MILLISECONDS));
+
+        pool.release(first);
+        assertSame(first, pool.acquire(100, 100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void oversizedBufferWhenNoneInUse() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(50);
+        ByteBuffer buffer = pool.acquire(100);
+        assertEquals(100, buffer.capacity());
+        assertNull(pool.tryAcquire(10));
+    }
+
+    @Test
+    public void dropFreeBuffersWithDifferentCapacity() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(200);
+        ByteBuffer small = pool.acquire(100);
+        ByteBuffer other = pool.acquire(100);
+        pool.release(small);
+
+        ByteBuffer big = pool.tryAcquire(101);
+        assertNull(big);
+        pool.release(other);
+
+        big = pool.tryAcquire(150);
+        assertEquals(150, big.capacity());
+        assertEquals(150, pool.getInUse());
+        assertTrue(pool.getAllocated() <= 200);
+    }
+
+    @Test
+    public void freeBuffersAreBounded() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(0, 250);
+        for( int round=0; round<3; round++ ) {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            for( int i=0; i<5; i++ )
+                buffers.add(pool.acquire(100 + round));
+            for( ByteBuffer it : buffers )
+                pool.release(it);
+            // the free bytes stop growing at the max free amount
+            assertEquals(0, pool.getInUse());
+            assertTrue(pool.getAllocated() <= 250);
+        }
+    }
+
+    @Test
+    public void unboundedPoolKeepsDefaultMaxFree() {
+        assertEquals(ByteBufferPool.DEFAULT_MAX_FREE, new ByteBufferPool(0).getMaxFree());
+        assertEquals(1000, new ByteBufferPool(1000).getMaxFree());
+    }
+
+    @Test
+    public void discardBuffers() throws InterruptedException {
+        ByteBufferPool pool = new ByteBufferPool(100);
+        ByteBuffer first = pool.acquire(100);
+        pool.discard(first);
+        assertEquals(0, pool.getAllocated());
+
+        ByteBuffer second = pool.acquire(100);
+        assertNotSame(first, second);
+        assertEquals(100, pool.getInUse());
+    }
+
+    @Test
+    public void ignoreForeignBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(100);
+        pool.release(ByteBuffer.allocate(10));
+        pool.release(null);
+        assertEquals(0, pool.getAllocated());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.util.Properties;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+public class S3DownloadOptionsTest {
+
+    @Test
+    public void rejectNonPositiveValues() {
+        Properties props = new Properties();
+        props.setProperty("download_chunk_size", "0");
+        props.setProperty("download_max_threads", "-1");
+        props.setProperty("download_block_size", "0");
+        props.setProperty("download_block_cache_size", "0");
+        props.setProperty("download_buffer_max_size", "-10");
+        props.setProperty("download_max_attempts", "0");
+        props.setProperty("download_retry_sleep", "-1");
+
+        S3DownloadOptions opts = new S3DownloadOptions(props);
+        S3DownloadOptions defaults = new S3DownloadOptions();
+        assertEquals(S3DownloadOptions.DEFAULT_CHUNK_SIZE, opts.getChunkSize());
+        assertEquals(defaults.getMaxThreads(), opts.getMaxThreads());
+        assertEquals(S3DownloadOptions.DEFAULT_BLOCK_SIZE, opts.getBlockSize());
+        assertEquals(S3DownloadOptions.DEFAULT_BLOCK_CACHE_SIZE, opts.getBlockCacheSize());
+        assertEquals(S3DownloadOptions.DEFAULT_BUFFER_MAX_SIZE, opts.getBufferMaxSize());
+        assertEquals(defaults.getMaxAttempts(), opts.getMaxAttempts());
+        assertEquals(defaults.getRetrySleep(), opts.getRetrySleep());
+        assertEquals(defaults.getPrefetchCount(), opts.getPrefetchCount());
+    }
+
+    @Test
+    public void acceptPositiveValues() {
+        S3DownloadOptions opts = new S3DownloadOptions()
+                .setChunkSize(100)
+                .setMaxThreads(2)
+                .setBufferMaxSize(1000)
+                .setRetrySleep(0);
+        assertEquals(100, opts.getChunkSize());
+        assertEquals(2, opts.getMaxThreads());
+        assertEquals(0, opts.getRetrySleep());
+        assertEquals(2, opts.getPrefetchCount());
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2013-2018, Centre for Genomic Regulation (CRG).
+ * Copyright (c) 2013-2018, Paolo Di Tommaso and the respective authors.
+ *
+ *   This file is part of 'Nextflow'.
+ *
+ *   Nextflow is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Nextflow is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Nextflow.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.upplication.s3fs.util;
+
+import java.util.Properties;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class S3ObjectSummaryCacheTest {
+
+    private static S3ObjectSummary summary(String bucket, String key) {
+        S3ObjectSummary result = new S3ObjectSummary();
+        result.setBucketName(bucket);
+        result.setKey(key);
+        return result;
+    }
+
+    /**
+     * @return A cache with both the found and the missing paths enabled, since it is disabled by default
+     */
+    private static S3ObjectSummaryCache enabledCache() {
+        Properties props = new Properties();
+        props.setProperty("attributes_cache_ttl", "30000");
+        props.setProperty("attributes_cache_missing_ttl", "5000");
+        return new S3ObjectSummaryCache(props);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        S3ObjectSummaryCache cache = new S3ObjectSummaryCache();
+        cache.put("bucket", "file", summary("bucket", "file"));
+        cache.putMissing("bucket", "missing");
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("bucket", "file"));
+        assertFalse(cache.isMissing("bucket", "missing"));
+    }
+
+    @Test
+    public void putAndGet() {
+        S3ObjectSummaryCache cache = enabledCache();
+        S3ObjectSummary file = summary("bucket", "dir/file");
+        cache.put("bucket", "dir/file", file);
+        cache.putDirectory("bucket", "dir/");
+
+        assertSame(file, cache.get("bucket", "dir/file"));
+        assertEquals("dir/", cache.get("bucket", "dir").getKey());
+        assertNull(cache.get("other", "dir/file"));
+        assertNull(cache.get("bucket", "dir/missing"));
+    }
+
+    @Test
+    public void fileAndDirectoryWithSameName() {
+        S3ObjectSummaryCache cache = enabledCache();
+        S3ObjectSummary file = summary("bucket", "a/b");
+        S3ObjectSummary child = summary("bucket", "a/b/c");
+        cache.put("bucket", "a/b", file);
+        // a directory looked up by the first object it contains
+        cache.put("bucket", "a/b/", child);
+
+        assertSame(file, cache.get("bucket", "a/b"));
+        assertSame(child, cache.get("bucket", "a/b/"));
+
+        // the directory is found when there's no file with the same name
+        cache.invalidate("bucket", "a/b");
+        cache.putDirectory("bucket", "a/b");
+        assertEquals("a/b/", cache.get("bucket", "a/b").getKey());
+        cache.put("bucket", "a/b", file);
+        assertSame(file, cache.get("bucket", "a/b"));
+        assertEquals("a/b/", cache.get("bucket", "a/b/").getKey());
+
+        // removing the directory content does not affect the file
+        cache.invalidateTree("bucket", "a/b/");
+        cache.put("bucket", "a/b", file);
+        assertSame(file, cache.get("bucket", "a/b"));
+        assertNull(cache.get("bucket", "a/b/"));
+    }
+
+    @Test
+    public void invalidateParentDirectories() {
+        S3ObjectSummaryCache cache = enabledCache();
+        cache.put("bucket", "a/b/c", summary("bucket", "a/b/c"));
+        cache.putDirectory("bucket", "a/b");
+        cache.putDirectory("bucket", "a");
+        cache.put("bucket", "a/x", summary("bucket", "a/x"));
+
+        cache.invalidate("bucket", "a/b/c");
+
+        assertNull(cache.get("bucket", "a/b/c"));
+        assertNull(cache.get("bucket", "a/b"));
+        assertNull(cache.get("bucket", "a"));
+        // siblings are not affected
+        assertEquals("a/x", cache.get("bucket", "a/x").getKey());
+    }
+
+    @Test
+    public void missingPaths() {
+        S3ObjectSummaryCache cache = enabledCache();
+        cache.putMissing("bucket", "a/b/c");
+        cache.putMissing("bucket", "a/x");
+        cache.putMissing("bucket", "z");
+
+        assertTrue(cache.isMissing("bucket", "a/b/c"));
+        assertTrue(cache.isMissing("bucket", "a/x/"));
+        assertFalse(cache.isMissing("bucket", "a/b"));
+
+        // writing a path makes it and its parent directories exist
+        cache.invalidate("bucket", "a/b/c/d");
+        assertFalse(cache.isMissing("bucket", "a/b/c"));
+        assertTrue(cache.isMissing("bucket", "a/x"));
+
+        // as well as finding it
+        cache.put("bucket", "a/x", summary("bucket", "a/x"));
+        assertFalse(cache.isMissing("bucket", "a/x"));
+        cache.putDirectory("bucket", "z/");
+        assertFalse(cache.isMissing("bucket", "z"));
+    }
+
+    @Test
+    public void missingPathsNotCached() {
+        Properties props = new Properties();
+        props.setProperty("attributes_cache_ttl", "30000");
+        props.setProperty("attributes_cache_missing_ttl", "0");
+        S3ObjectSummaryCache cache = new S3ObjectSummaryCache(props);
+        cache.putMissing("bucket", "file");
+
+        assertTrue(cache.isEnabled());
+        assertFalse(cache.isMissing("bucket", "file"));
+    }
+
+    @Test
+    public void disabledCache() {
+        Properties props = new Properties();
+        props.setProperty("attributes_cache_ttl", "0");
+        S3ObjectSummaryCache cache = new S3ObjectSummaryCache(props);
+        cache.put("bucket", "file", summary("bucket", "file"));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("bucket", "file"));
+    }
+
+    @Test
+    public void entriesExpire() throws InterruptedException {
+        Properties props = new Properties();
+        props.setProperty("attributes_cache_ttl", "50");
+        S3ObjectSummaryCache cache = new S3ObjectSummaryCache(props);
+        cache.put("bucket", "file", summary("bucket", "file"));
+
+        assertTrue(cache.isEnabled());
+        assertEquals("file", cache.get("bucket", "file").getKey());
+        Thread.sleep(100);
+        assertNull(cache.get("bucket", "file"));
+    }
+}